@@ -0,0 +1,71 @@
+package io.apitally.benchmark;
+
+import io.apitally.common.ApitallyClient;
+import io.apitally.common.RequestLoggingConfig;
+import io.apitally.common.RouteRegistry;
+import io.apitally.common.SlidingWindowMetrics;
+import io.apitally.common.dto.Path;
+import io.apitally.spring.ApitallyFilter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Measures the time and, with the {@code gc} profiler that {@code make benchmark} enables, the
+ * allocations of {@link ApitallyFilter} per request without request logging, including the request
+ * counter and sliding window metrics. The mock request and response are reused, so what is allocated
+ * comes from the filter, apart from the attribute {@link
+ * org.springframework.web.filter.OncePerRequestFilter} sets on the request. Run with {@code make
+ * benchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ApitallyFilterBenchmark {
+    private final FilterChain chain = (request, response) ->
+            request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/items/{id}");
+
+    private ApitallyClient client;
+    private ApitallyFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() {
+        client = new ApitallyClient("00000000-0000-0000-0000-000000000000", "benchmark", new RequestLoggingConfig());
+        client.setRouteRegistry(new RouteRegistry(List.of(new Path("GET", "/items/{id}"))));
+        client.enableSlidingWindowMetrics(new SlidingWindowMetrics());
+        filter = new ApitallyFilter(client);
+        request = new MockHttpServletRequest("GET", "/items/1");
+        response = new MockHttpServletResponse();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.shutdown();
+    }
+
+    @Benchmark
+    public void filterWithoutRequestLogging() throws ServletException, IOException {
+        filter.doFilter(request, response, chain);
+    }
+}
@@ -0,0 +1,91 @@
+package io.apitally.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.apitally.common.JsonBodyMasker;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares masking a JSON body of about 50 KB with the streaming {@link JsonBodyMasker} to the
+ * previous approach of reading it into a tree. Run with {@code make benchmark}, adding {@code -prof
+ * gc} to the JMH arguments to compare allocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonBodyMaskerBenchmark {
+    private static final Pattern MASK_PATTERN = Pattern.compile("password|token|secret", Pattern.CASE_INSENSITIVE);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonBodyMasker jsonBodyMasker = new JsonBodyMasker(
+            JsonFactory.builder()
+                    .enable(JsonWriteFeature.COMBINE_UNICODE_SURROGATES_IN_UTF8)
+                    .build(),
+            name -> MASK_PATTERN.matcher(name).find(),
+            "******");
+    private final byte[] body = createBody();
+
+    @Benchmark
+    public byte[] streaming() throws IOException {
+        return jsonBodyMasker.mask(body);
+    }
+
+    @Benchmark
+    public byte[] tree() throws IOException {
+        JsonNode node = objectMapper.readTree(new String(body, StandardCharsets.UTF_8));
+        maskTree(node);
+        return objectMapper.writeValueAsString(node).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void maskTree(JsonNode node) {
+        if (node.isObject()) {
+            ObjectNode objectNode = (ObjectNode) node;
+            objectNode.fields().forEachRemaining(entry -> {
+                if (entry.getValue().isTextual() && MASK_PATTERN.matcher(entry.getKey()).find()) {
+                    objectNode.put(entry.getKey(), "******");
+                } else {
+                    maskTree(entry.getValue());
+                }
+            });
+        } else if (node.isArray()) {
+            node.forEach(this::maskTree);
+        }
+    }
+
+    private static byte[] createBody() {
+        StringBuilder json = new StringBuilder("{\"items\": [");
+        for (int i = 0; i < 300; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("{\"id\": ")
+                    .append(i)
+                    .append(", \"name\": \"Item ")
+                    .append(i)
+                    .append("\", \"price\": ")
+                    .append(i * 1.25)
+                    .append(", \"tags\": [\"a\", \"b\", \"c\"], \"owner\": {\"email\": \"user")
+                    .append(i)
+                    .append("@example.com\", \"token\": \"abcdef0123456789\"}, \"active\": true}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+package io.apitally.benchmark;
+
+import io.apitally.common.PatternMatcher;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares matching patterns with {@link PatternMatcher}, which uses a linear-time engine, to matching
+ * them with {@link java.util.regex}, on input crafted to make backtracking take exponential time and
+ * on a typical header name. The cache of the matcher is disabled, so every call is matched. Run with
+ * {@code make benchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PatternMatcherBenchmark {
+    private static final List<String> HEADER_PATTERNS = List.of("auth", "api-?key", "secret", "token", "cookie");
+
+    private final PatternMatcher headerMatcher = new PatternMatcher(HEADER_PATTERNS, 0);
+    private final List<Pattern> headerPatterns = HEADER_PATTERNS.stream()
+            .map(p -> Pattern.compile(p, Pattern.CASE_INSENSITIVE))
+            .toList();
+
+    @State(Scope.Thread)
+    public static class Adversarial {
+        @Param({"(a+)+$", "(a|aa)+$", "(\\w+\\s?)+$"})
+        public String pattern;
+
+        // Backtracking doubles its time with each additional character
+        @Param({"16", "20", "24"})
+        public int length;
+
+        private PatternMatcher patternMatcher;
+        private Pattern backtrackingPattern;
+        private String input;
+
+        @Setup
+        public void setup() {
+            patternMatcher = new PatternMatcher(List.of(pattern), 0);
+            backtrackingPattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            input = "a".repeat(length) + "!";
+        }
+    }
+
+    @Benchmark
+    public boolean adversarialLinear(Adversarial adversarial) {
+        return adversarial.patternMatcher.matches(adversarial.input);
+    }
+
+    @Benchmark
+    public boolean adversarialBacktracking(Adversarial adversarial) {
+        return adversarial.backtrackingPattern.matcher(adversarial.input).find();
+    }
+
+    @Benchmark
+    public boolean headerNameLinear() {
+        return headerMatcher.matches("Content-Type");
+    }
+
+    @Benchmark
+    public boolean headerNameBacktracking() {
+        for (Pattern headerPattern : headerPatterns) {
+            if (headerPattern.matcher("Content-Type").find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package io.apitally.benchmark;
+
+import io.apitally.common.RequestCounter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the write throughput of the sharded {@link RequestCounter} with the previous design based
+ * on shared {@link ConcurrentHashMap}s, and measures requests folded into overflow keys once the key
+ * budget is exhausted. Run with {@code make benchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class RequestCounterBenchmark {
+    private static final String[] PATHS = {"/items", "/items/{id}", "/users", "/users/{id}"};
+
+    private final RequestCounter requestCounter = new RequestCounter();
+    private final RequestCounter exhaustedRequestCounter = new RequestCounter(1, 5);
+    private final ConcurrentHashMapRequestCounter concurrentHashMapRequestCounter =
+            new ConcurrentHashMapRequestCounter();
+
+    @State(Scope.Thread)
+    public static class Request {
+        private int index;
+
+        String nextPath() {
+            return PATHS[index++ & (PATHS.length - 1)];
+        }
+    }
+
+    @Benchmark
+    public void sharded(Request request) {
+        requestCounter.addRequest("", "GET", request.nextPath(), 200, 25, 120, 2400);
+    }
+
+    @Benchmark
+    public void shardedOverflow(Request request) {
+        exhaustedRequestCounter.addRequest("", "GET", request.nextPath(), 200, 25, 120, 2400);
+    }
+
+    @Benchmark
+    public void concurrentHashMap(Request request) {
+        concurrentHashMapRequestCounter.addRequest("", "GET", request.nextPath(), 200, 25, 120, 2400);
+    }
+
+    /** Write path of the request counter before sharding, kept as a baseline. */
+    static class ConcurrentHashMapRequestCounter {
+        private final Map<String, Integer> requestCounts = new ConcurrentHashMap<>();
+        private final Map<String, Long> requestSizeSums = new ConcurrentHashMap<>();
+        private final Map<String, Long> responseSizeSums = new ConcurrentHashMap<>();
+        private final Map<String, Map<Integer, Integer>> responseTimes = new ConcurrentHashMap<>();
+        private final Map<String, Map<Integer, Integer>> requestSizes = new ConcurrentHashMap<>();
+        private final Map<String, Map<Integer, Integer>> responseSizes = new ConcurrentHashMap<>();
+
+        void addRequest(
+                String consumer,
+                String method,
+                String path,
+                int statusCode,
+                long responseTime,
+                long requestSize,
+                long responseSize) {
+            String key = String.join("|", consumer, method.toUpperCase(), path, String.valueOf(statusCode));
+            requestCounts.merge(key, 1, Integer::sum);
+            responseTimes
+                    .computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                    .merge((int) (Math.floor(responseTime / 10.0) * 10), 1, Integer::sum);
+            if (requestSize >= 0) {
+                requestSizeSums.merge(key, requestSize, Long::sum);
+                requestSizes
+                        .computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                        .merge((int) Math.floor(requestSize / 1000.0), 1, Integer::sum);
+            }
+            if (responseSize >= 0) {
+                responseSizeSums.merge(key, responseSize, Long::sum);
+                responseSizes
+                        .computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                        .merge((int) Math.floor(responseSize / 1000.0), 1, Integer::sum);
+            }
+        }
+    }
+}
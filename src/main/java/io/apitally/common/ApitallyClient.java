@@ -64,6 +64,8 @@ public class ApitallyClient {
     private StartupData startupData;
     private boolean startupDataSent = false;
     private boolean enabled = true;
+    private volatile RouteRegistry routeRegistry = RouteRegistry.EMPTY;
+    private volatile SlidingWindowMetrics slidingWindowMetrics;
 
     public final RequestCounter requestCounter;
     public final RequestLogger requestLogger;
@@ -76,12 +78,36 @@ public class ApitallyClient {
     private final Random random = new Random();
 
     public ApitallyClient(String clientId, String env, RequestLoggingConfig requestLoggingConfig) {
+        this(clientId, env, requestLoggingConfig, LatencyHistogram.DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * @param responseTimePrecisionBits precision of the response time histograms, see {@link
+     *     LatencyHistogram}
+     */
+    public ApitallyClient(
+            String clientId, String env, RequestLoggingConfig requestLoggingConfig, int responseTimePrecisionBits) {
+        this(clientId, env, requestLoggingConfig, responseTimePrecisionBits, RequestCounter.DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param responseTimePrecisionBits precision of the response time histograms, see {@link
+     *     LatencyHistogram}
+     * @param maxRequestKeys maximum number of keys the request counter counts per sync interval, see
+     *     {@link RequestCounter#RequestCounter(int, int)}
+     */
+    public ApitallyClient(
+            String clientId,
+            String env,
+            RequestLoggingConfig requestLoggingConfig,
+            int responseTimePrecisionBits,
+            int maxRequestKeys) {
         this.clientId = clientId;
         this.env = env;
         this.instanceLock = InstanceLock.create(clientId, env);
         this.httpClient = createHttpClient();
 
-        this.requestCounter = new RequestCounter();
+        this.requestCounter = new RequestCounter(maxRequestKeys, responseTimePrecisionBits);
         this.requestLogger = new RequestLogger(requestLoggingConfig);
         this.validationErrorCounter = new ValidationErrorCounter();
         this.serverErrorCounter = new ServerErrorCounter();
@@ -113,6 +139,28 @@ public class ApitallyClient {
         return URI.create(baseUrl + "/v2/" + clientId + "/" + env + "/" + endpoint + query);
     }
 
+    public RouteRegistry getRouteRegistry() {
+        return routeRegistry;
+    }
+
+    public void setRouteRegistry(RouteRegistry routeRegistry) {
+        this.routeRegistry = routeRegistry;
+        requestLogger.setRouteRegistry(routeRegistry);
+    }
+
+    /**
+     * Enables live per-endpoint metrics over sliding windows. Requests recorded before they were
+     * enabled are not included.
+     */
+    public void enableSlidingWindowMetrics(SlidingWindowMetrics slidingWindowMetrics) {
+        this.slidingWindowMetrics = slidingWindowMetrics;
+    }
+
+    /** Returns the live per-endpoint metrics, or null if sliding window metrics are not enabled. */
+    public SlidingWindowMetrics getSlidingWindowMetrics() {
+        return slidingWindowMetrics;
+    }
+
     public void setStartupData(List<Path> paths, Map<String, String> versions, String client) {
         startupData = new StartupData(instanceLock.getInstanceUuid(), paths, versions, client);
     }
@@ -0,0 +1,141 @@
+package io.apitally.common;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity, lock-free queue for many producers and a single consumer. Each slot carries a
+ * sequence number that tells producers and consumers whether it is free or filled for their current
+ * position, so offering and polling an item costs a single CAS on the tail or head position. The
+ * consumer can claim a batch of filled slots with one CAS, see {@link #drainTo(Collection, int)}.
+ *
+ * <p>Claiming the head is a CAS as well, so producers may poll too, e.g. to drop the oldest item
+ * when the buffer is full.
+ */
+public class BoundedRingBuffer<E> {
+    private final int capacity;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public BoundedRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.elements = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Adds the item at the tail, or returns false if the buffer is full. */
+    public boolean offer(E item) {
+        long position = tail.get();
+        while (true) {
+            int index = index(position);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(index, item);
+                    // Publishes the item to the consumer of this position
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds the item from one lap ago
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /** Removes and returns the item at the head, or returns null if the buffer is empty. */
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = index(position);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    return take(index, position);
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                // Empty, or the producer of this position hasn't published its item yet
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to the given number of items from the head to the target collection, claiming them
+     * with a single CAS. Returns the number of items moved.
+     */
+    public int drainTo(Collection<? super E> target, int maxItems) {
+        while (true) {
+            long position = head.get();
+            int count = 0;
+            while (count < maxItems) {
+                long itemPosition = position + count;
+                if (sequences.get(index(itemPosition)) != itemPosition + 1) {
+                    break;
+                }
+                count++;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            if (head.compareAndSet(position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    long itemPosition = position + i;
+                    target.add(take(index(itemPosition), itemPosition));
+                }
+                return count;
+            }
+        }
+    }
+
+    /** Returns the number of items in the buffer, which is only an estimate while it is modified. */
+    public int size() {
+        while (true) {
+            long headBefore = head.get();
+            long currentTail = tail.get();
+            if (head.get() == headBefore) {
+                return (int) Math.max(0, Math.min(capacity, currentTail - headBefore));
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        while (poll() != null) {}
+    }
+
+    private E take(int index, long position) {
+        E item = elements.get(index);
+        elements.set(index, null);
+        // Frees the slot for the producer one lap ahead
+        sequences.set(index, position + capacity);
+        return item;
+    }
+
+    private int index(long position) {
+        return (int) (position % capacity);
+    }
+}
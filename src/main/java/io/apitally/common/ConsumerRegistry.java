@@ -22,10 +22,10 @@ public class ConsumerRegistry {
             return null;
         }
         if (consumer instanceof Consumer c) {
-            return c.getIdentifier().trim().isEmpty() ? null : c;
+            return c.getIdentifier().isBlank() ? null : c;
         } else if (consumer instanceof String) {
             String identifier = (String) consumer;
-            return identifier.trim().isEmpty() ? null : new Consumer(identifier);
+            return identifier.isBlank() ? null : new Consumer(identifier);
         } else if (consumer instanceof Integer || consumer instanceof Long) {
             String identifier = String.valueOf(consumer);
             return new Consumer(identifier);
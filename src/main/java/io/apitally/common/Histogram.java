@@ -0,0 +1,76 @@
+package io.apitally.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Histogram of integer bins. The common low bins are stored in a dense primitive array, any other
+ * bins in a sparse overflow map that is only allocated when needed.
+ *
+ * <p>Not thread-safe. Each instance is expected to have a single writer, with histograms from
+ * different threads combined using {@link #merge(Histogram)}.
+ */
+public class Histogram {
+    private final long[] dense;
+    private Map<Integer, long[]> overflow;
+
+    public Histogram(int denseBins) {
+        this.dense = new long[denseBins];
+    }
+
+    public void add(int bin) {
+        add(bin, 1);
+    }
+
+    public void add(int bin, long count) {
+        if (bin >= 0 && bin < dense.length) {
+            dense[bin] += count;
+            return;
+        }
+        if (overflow == null) {
+            overflow = new HashMap<>();
+        }
+        long[] counter = overflow.get(bin);
+        if (counter == null) {
+            counter = new long[1];
+            overflow.put(bin, counter);
+        }
+        counter[0] += count;
+    }
+
+    public long getCount(int bin) {
+        if (bin >= 0 && bin < dense.length) {
+            return dense[bin];
+        }
+        long[] counter = overflow != null ? overflow.get(bin) : null;
+        return counter != null ? counter[0] : 0;
+    }
+
+    public void merge(Histogram other) {
+        for (int i = 0; i < other.dense.length; i++) {
+            if (other.dense[i] > 0) {
+                add(i, other.dense[i]);
+            }
+        }
+        if (other.overflow != null) {
+            other.overflow.forEach((bin, counter) -> add(bin, counter[0]));
+        }
+    }
+
+    /**
+     * Returns the non-empty bins in the format expected by the Apitally hub, with each bin multiplied
+     * by the given bin width.
+     */
+    public Map<Integer, Integer> toMap(int binWidth) {
+        Map<Integer, Integer> map = new HashMap<>();
+        for (int i = 0; i < dense.length; i++) {
+            if (dense[i] > 0) {
+                map.put(i * binWidth, (int) dense[i]);
+            }
+        }
+        if (overflow != null) {
+            overflow.forEach((bin, counter) -> map.put(bin * binWidth, (int) counter[0]));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,114 @@
+package io.apitally.common;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Masks the textual values of matching fields in a JSON body in a single pass, by copying the tokens
+ * from a parser straight into a generator. The output is identical to reading the body into a tree,
+ * masking it and serializing it again. Bodies where that is not guaranteed are rejected, see {@link
+ * #mask(byte[])}.
+ *
+ * <p>The output buffer is reused across calls, so a masker must only be used by one thread at a time.
+ */
+public class JsonBodyMasker {
+    private final JsonFactory jsonFactory;
+    private final Predicate<String> shouldMaskField;
+    private final String maskedValue;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    /**
+     * The factory must have {@link JsonWriteFeature#COMBINE_UNICODE_SURROGATES_IN_UTF8} enabled, so
+     * surrogate pairs are encoded like in a tree serialized to a string.
+     */
+    public JsonBodyMasker(JsonFactory jsonFactory, Predicate<String> shouldMaskField, String maskedValue) {
+        this.jsonFactory = jsonFactory;
+        this.shouldMaskField = shouldMaskField;
+        this.maskedValue = maskedValue;
+    }
+
+    /**
+     * Returns the masked body, or null if it can't be masked in a single pass. That is the case for
+     * empty bodies, bodies not encoded in UTF-8 and strings with unpaired surrogates, which a tree
+     * handles differently. Objects with duplicate field names and invalid JSON fail with an
+     * exception.
+     */
+    public byte[] mask(byte[] body) throws IOException {
+        if (body.length == 0 || !isPlainUtf8(body)) {
+            return null;
+        }
+        output.reset();
+        try (JsonParser parser = jsonFactory.createParser(body);
+                JsonGenerator generator = jsonFactory.createGenerator(output)) {
+            // A tree keeps the last value of duplicate fields, which can't be replicated in a stream
+            parser.enable(JsonParser.Feature.STRICT_DUPLICATE_DETECTION);
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return null;
+            }
+            // Trailing content after the root value is ignored, as it is by a tree
+            do {
+                if (token == JsonToken.FIELD_NAME) {
+                    if (hasUnpairedSurrogate(parser)) {
+                        return null;
+                    }
+                    String name = parser.currentName();
+                    generator.writeFieldName(name);
+                    token = parser.nextToken();
+                    if (token == JsonToken.VALUE_STRING && shouldMaskField.test(name)) {
+                        generator.writeString(maskedValue);
+                        continue;
+                    }
+                }
+                if (token == JsonToken.VALUE_STRING) {
+                    if (hasUnpairedSurrogate(parser)) {
+                        return null;
+                    }
+                    generator.writeString(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                } else {
+                    generator.copyCurrentEvent(parser);
+                }
+            } while (!generator.getOutputContext().inRoot() && (token = parser.nextToken()) != null);
+            if (!generator.getOutputContext().inRoot()) {
+                throw new IOException("Unexpected end of JSON body");
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Returns whether the text of the current token has a surrogate without its pair, which the tree encodes as a
+     * replacement character while the generator escapes it.
+     */
+    private static boolean hasUnpairedSurrogate(JsonParser parser) throws IOException {
+        char[] text = parser.getTextCharacters();
+        int end = parser.getTextOffset() + parser.getTextLength();
+        for (int i = parser.getTextOffset(); i < end; i++) {
+            char c = text[i];
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text[i + 1])) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns false for bodies starting with a byte order mark or looking like UTF-16 or UTF-32,
+     * which the parser would detect as such while a tree is read from the body decoded as UTF-8.
+     */
+    private static boolean isPlainUtf8(byte[] body) {
+        int first = body[0] & 0xFF;
+        if (first == 0x00 || first == 0xEF || first == 0xFE || first == 0xFF) {
+            return false;
+        }
+        return body.length < 2 || body[1] != 0x00;
+    }
+}
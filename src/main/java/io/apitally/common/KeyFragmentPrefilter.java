@@ -0,0 +1,345 @@
+package io.apitally.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+/**
+ * Byte-level prefilter that tells whether a JSON body may contain a field matching any of the body
+ * field mask patterns. Each pattern is reduced to literal fragments that every match must contain,
+ * and the raw body is scanned once for these fragments with an Aho-Corasick automaton, ignoring ASCII
+ * case. Bodies without any fragment can be logged without parsing them.
+ *
+ * <p>Patterns that can't be reduced to fragments, e.g. with inline flags other than {@code (?i)} or a
+ * branch without any required literal, disable the prefilter, so all bodies are masked. Unicode escapes in the body may
+ * hide a fragment, so bodies with {@code \\u} are always candidates.
+ */
+class KeyFragmentPrefilter {
+    private static final int ALPHABET_SIZE = 128;
+
+    // Transitions of the automaton, with failure transitions resolved, and whether a state ends a
+    // fragment. Null if the prefilter is disabled.
+    private final int[][] transitions;
+    private final boolean[] accepting;
+
+    private KeyFragmentPrefilter(List<String> fragments) {
+        if (fragments == null) {
+            this.transitions = null;
+            this.accepting = null;
+            return;
+        }
+        int maxStates = 1;
+        for (String fragment : fragments) {
+            maxStates += fragment.length();
+        }
+        int[][] goTo = new int[maxStates][ALPHABET_SIZE];
+        boolean[] ends = new boolean[maxStates];
+        int stateCount = 1;
+        for (int[] row : goTo) {
+            Arrays.fill(row, -1);
+        }
+        for (String fragment : fragments) {
+            int state = 0;
+            for (int i = 0; i < fragment.length(); i++) {
+                char c = fragment.charAt(i);
+                if (goTo[state][c] < 0) {
+                    goTo[state][c] = stateCount++;
+                }
+                state = goTo[state][c];
+            }
+            ends[state] = true;
+        }
+
+        // Resolve failure transitions breadth-first, so each state inherits the transitions of its
+        // longest proper suffix that is also a prefix of a fragment
+        int[] failure = new int[stateCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            if (goTo[0][c] < 0) {
+                goTo[0][c] = 0;
+            } else {
+                failure[goTo[0][c]] = 0;
+                queue.add(goTo[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            ends[state] |= ends[failure[state]];
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                int next = goTo[state][c];
+                if (next < 0) {
+                    goTo[state][c] = goTo[failure[state]][c];
+                } else {
+                    failure[next] = goTo[failure[state]][c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(goTo, stateCount);
+        this.accepting = Arrays.copyOf(ends, stateCount);
+    }
+
+    /** Builds the prefilter for the given patterns, which is disabled if any can't be reduced. */
+    static KeyFragmentPrefilter forPatterns(List<Pattern> patterns) {
+        List<String> fragments = new ArrayList<>();
+        for (Pattern pattern : patterns) {
+            List<String> patternFragments = getRequiredFragments(pattern);
+            if (patternFragments == null) {
+                return new KeyFragmentPrefilter(null);
+            }
+            fragments.addAll(patternFragments);
+        }
+        return new KeyFragmentPrefilter(fragments);
+    }
+
+    boolean isEnabled() {
+        return transitions != null;
+    }
+
+    /** Returns whether the body may contain a field matching any pattern, scanning it once. */
+    boolean mayMatch(byte[] body) {
+        if (transitions == null) {
+            return true;
+        }
+        int state = 0;
+        for (int i = 0; i < body.length; i++) {
+            int b = body[i];
+            if (b < 0) {
+                // Bytes of multi-byte characters are never part of an ASCII fragment
+                state = 0;
+                continue;
+            }
+            if (b == '\\' && i + 1 < body.length && body[i + 1] == 'u') {
+                return true;
+            }
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            state = transitions[state][b];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns lower-cased literal fragments of which every match of the pattern contains at least
+     * one, one per top-level alternative, or null if the pattern can't be reduced to fragments.
+     * Groups, character classes and escapes other than quoted punctuation end a fragment, and atoms
+     * that may repeat zero times are left out.
+     */
+    static List<String> getRequiredFragments(Pattern pattern) {
+        if ((pattern.flags() & ~Pattern.CASE_INSENSITIVE) != 0) {
+            return null;
+        }
+        String regex = pattern.pattern();
+        List<String> fragments = new ArrayList<>();
+        String longest = "";
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+        while (i <= regex.length()) {
+            if (i == regex.length() || regex.charAt(i) == '|') {
+                longest = longer(longest, current);
+                if (longest.isEmpty()) {
+                    return null;
+                }
+                fragments.add(longest);
+                longest = "";
+                current.setLength(0);
+                i++;
+                continue;
+            }
+
+            // Read one atom, which is a literal character or -1 for anything else
+            char c = regex.charAt(i);
+            int literal;
+            int atomEnd;
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q' || escaped == 'E' || (escaped >= '1' && escaped <= '9')) {
+                    // Quoting and back references
+                    return null;
+                }
+                literal = Character.isLetterOrDigit(escaped) ? -1 : escaped;
+                atomEnd = skipEscape(regex, i);
+            } else if (c == '[') {
+                literal = -1;
+                atomEnd = skipClass(regex, i);
+            } else if (c == '(') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+                    // Case is already ignored, so only the case insensitive flag is known to change
+                    // nothing, other flags and lookarounds change what the rest of the pattern matches
+                    int flagsEnd = i + 2;
+                    while (flagsEnd < regex.length() && regex.charAt(flagsEnd) == 'i') {
+                        flagsEnd++;
+                    }
+                    if (flagsEnd > i + 2 && flagsEnd < regex.length() && regex.charAt(flagsEnd) == ')') {
+                        i = flagsEnd + 1;
+                        continue;
+                    }
+                    if (flagsEnd >= regex.length() || regex.charAt(flagsEnd) != ':') {
+                        return null;
+                    }
+                }
+                literal = -1;
+                atomEnd = skipGroup(regex, i);
+            } else if (c == ')' || c == '*' || c == '+' || c == '?' || c == '{') {
+                return null;
+            } else {
+                literal = c == '.' || c == '^' || c == '$' ? -1 : c;
+                atomEnd = i + 1;
+            }
+            if (atomEnd < 0) {
+                return null;
+            }
+
+            // Read the quantifier of the atom, if any
+            boolean optional = false;
+            boolean repeated = false;
+            int next = atomEnd;
+            if (next < regex.length()) {
+                char quantifier = regex.charAt(next);
+                if (quantifier == '?' || quantifier == '*') {
+                    optional = true;
+                    next++;
+                } else if (quantifier == '+') {
+                    repeated = true;
+                    next++;
+                } else if (quantifier == '{') {
+                    int close = regex.indexOf('}', next);
+                    if (close < 0) {
+                        return null;
+                    }
+                    String bounds = regex.substring(next + 1, close);
+                    optional = bounds.startsWith("0") || bounds.startsWith(",");
+                    repeated = true;
+                    next = close + 1;
+                }
+                if (next > atomEnd && next < regex.length()) {
+                    char mode = regex.charAt(next);
+                    if (mode == '?' || mode == '+') {
+                        next++;
+                    }
+                }
+            }
+
+            if (literal < 0 || optional || !isFragmentChar(literal)) {
+                longest = longer(longest, current);
+                current.setLength(0);
+            } else {
+                current.append(Character.toLowerCase((char) literal));
+                if (repeated) {
+                    longest = longer(longest, current);
+                    current.setLength(0);
+                }
+            }
+            i = next;
+        }
+        return fragments;
+    }
+
+    /**
+     * Returns whether the character can be found as is in a raw JSON body. Non-ASCII characters are
+     * left out, as they are only folded by Unicode-aware matching, and so are characters that JSON
+     * may escape.
+     */
+    private static boolean isFragmentChar(int c) {
+        return c >= 0x20 && c < 0x7F && c != '"' && c != '\\' && c != '/';
+    }
+
+    private static String longer(String longest, CharSequence current) {
+        return current.length() > longest.length() ? current.toString() : longest;
+    }
+
+    /** Returns the end of the escape sequence at the given index, including any arguments. */
+    private static int skipEscape(String regex, int start) {
+        char escaped = regex.charAt(start + 1);
+        int end = start + 2;
+        if (end < regex.length() && (regex.charAt(end) == '{' || regex.charAt(end) == '<')) {
+            if ("pPxNkb".indexOf(escaped) >= 0) {
+                int close = regex.indexOf(regex.charAt(end) == '{' ? '}' : '>', end);
+                return close < 0 ? -1 : close + 1;
+            }
+        }
+        switch (escaped) {
+            case 'c':
+                return end + 1;
+            case 'x':
+                return end + 2;
+            case 'u':
+                return end + 4;
+            case '0':
+                int digits = 0;
+                while (digits < 3 && end < regex.length() && regex.charAt(end) >= '0' && regex.charAt(end) <= '7') {
+                    end++;
+                    digits++;
+                }
+                return end;
+            default:
+                return end;
+        }
+    }
+
+    private static int skipClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                // A closing bracket right after the opening one is a literal
+                i++;
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,187 @@
+package io.apitally.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Log-linear (HDR-style) histogram of response times in microseconds. Each power of two is split
+ * into 2^precisionBits linear sub-buckets, so the relative error of any recorded value is at most 1
+ * / 2^precisionBits. Pages of sub-buckets are only allocated for ranges that are used.
+ *
+ * <p>Not thread-safe. Each instance is expected to have a single writer, with histograms from
+ * different threads combined using {@link #merge(LatencyHistogram)}.
+ */
+public class LatencyHistogram {
+    public static final int DEFAULT_PRECISION_BITS = 5;
+
+    private final int precisionBits;
+    private final int subBucketCount;
+    private final long[][] pages;
+
+    public LatencyHistogram() {
+        this(DEFAULT_PRECISION_BITS);
+    }
+
+    public LatencyHistogram(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 10) {
+            throw new IllegalArgumentException("Precision bits must be between 1 and 10");
+        }
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        this.pages = new long[Long.SIZE - precisionBits + 1][];
+    }
+
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        int page;
+        int subBucket;
+        if (micros < subBucketCount) {
+            page = 0;
+            subBucket = (int) micros;
+        } else {
+            int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(micros)) - precisionBits;
+            page = shift + 1;
+            subBucket = (int) (micros >>> shift) - subBucketCount;
+        }
+        long[] counts = pages[page];
+        if (counts == null) {
+            counts = new long[subBucketCount];
+            pages[page] = counts;
+        }
+        counts[subBucket]++;
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (long[] counts : pages) {
+            if (counts != null) {
+                for (long count : counts) {
+                    total += count;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the response time in microseconds at the given percentile (0-100), or 0 if the
+     * histogram is empty. The value is reported as the midpoint of the matching sub-bucket.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        long lastValue = 0;
+        for (int page = 0; page < pages.length; page++) {
+            long[] counts = pages[page];
+            if (counts == null) {
+                continue;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    lastValue = midpoint(page, i);
+                    seen += counts[i];
+                    if (seen >= target) {
+                        return lastValue;
+                    }
+                }
+            }
+        }
+        return lastValue;
+    }
+
+    /**
+     * Re-bins the recorded values into fixed-width millisecond bins, as expected by the Apitally hub.
+     * Sub-buckets narrower than a bin are assigned to the bin containing their midpoint. Wider ones
+     * have their count spread across the bins they overlap, in proportion to the overlap, so they
+     * don't pile up in a single bin with empty bins in between.
+     */
+    public Map<Integer, Integer> toMillisecondBins(int binWidthMs) {
+        Map<Integer, Integer> map = new HashMap<>();
+        long binWidthMicros = binWidthMs * 1000L;
+        for (int page = 0; page < pages.length; page++) {
+            long[] counts = pages[page];
+            if (counts == null) {
+                continue;
+            }
+            long width = page == 0 ? 1 : 1L << (page - 1);
+            for (int i = 0; i < counts.length; i++) {
+                long count = counts[i];
+                if (count == 0) {
+                    continue;
+                }
+                if (width <= binWidthMicros) {
+                    int bin = (int) (midpoint(page, i) / binWidthMicros * binWidthMs);
+                    map.merge(bin, (int) count, Integer::sum);
+                    continue;
+                }
+                long low = lowerBound(page, i);
+                long high = low + width;
+                long firstBin = low / binWidthMicros;
+                long lastBin = (high - 1) / binWidthMicros;
+                long assigned = 0;
+                for (long bin = firstBin; bin <= lastBin; bin++) {
+                    // Rounds the cumulative share, so the shares add up to the count of the sub-bucket
+                    long end = Math.min(high, (bin + 1) * binWidthMicros);
+                    long cumulative = bin == lastBin ? count : Math.round((double) count * (end - low) / width);
+                    if (cumulative > assigned) {
+                        map.merge((int) (bin * binWidthMs), (int) (cumulative - assigned), Integer::sum);
+                        assigned = cumulative;
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
+    public void merge(LatencyHistogram other) {
+        if (other.precisionBits != precisionBits) {
+            throw new IllegalArgumentException("Cannot merge histograms with different precision");
+        }
+        for (int page = 0; page < pages.length; page++) {
+            long[] otherCounts = other.pages[page];
+            if (otherCounts == null) {
+                continue;
+            }
+            long[] counts = pages[page];
+            if (counts == null) {
+                pages[page] = otherCounts.clone();
+                continue;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += otherCounts[i];
+            }
+        }
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram(precisionBits);
+        copy.merge(this);
+        return copy;
+    }
+
+    private long lowerBound(int page, int subBucket) {
+        if (page == 0) {
+            return subBucket;
+        }
+        return (long) (subBucketCount + subBucket) << (page - 1);
+    }
+
+    private long midpoint(int page, int subBucket) {
+        long width = page == 0 ? 1 : 1L << (page - 1);
+        return lowerBound(page, subBucket) + width / 2;
+    }
+}
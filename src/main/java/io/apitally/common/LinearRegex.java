@@ -0,0 +1,803 @@
+package io.apitally.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Regex engine that finds matches in time linear in the length of the input, for patterns given by
+ * users and matched against paths, header names and other input controlled by clients. Patterns are
+ * compiled into a Thompson NFA, which is simulated on all positions of the input at once like in a
+ * Pike VM, so there is no backtracking that could take exponential time.
+ *
+ * <p>Only the subset of the {@link java.util.regex.Pattern} syntax that can be matched this way and
+ * behaves exactly like it, always with {@link java.util.regex.Pattern#CASE_INSENSITIVE}, is supported:
+ * literals, {@code .}, character classes without nesting or intersections, the escapes {@code \d \D \w
+ * \W \s \S}, groups, alternation, greedy and lazy quantifiers, the anchors {@code ^} and {@code $}, word
+ * boundaries {@code \b}, and the inline flag {@code (?i)}, which has no effect as case is already
+ * ignored. Other constructs like back references, lookarounds, possessive quantifiers or other inline
+ * flags are rejected, see {@link #isSupported(String)}.
+ */
+class LinearRegex {
+    /** Maximum number of instructions of a single pattern, e.g. with nested bounded repetition. */
+    static final int MAX_PROGRAM_SIZE = 10_000;
+
+    private static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+    private static final int[] DIGIT = {'0', '9'};
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+    private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029};
+    // Whether \b treats all letters and digits as word characters, rather than only those of \w, which
+    // changed in Java 19
+    private static final boolean UNICODE_WORD_BOUNDARIES =
+            Pattern.compile("\\b").matcher("\u00e9").find();
+
+    private static final byte CHAR = 0;
+    private static final byte SPLIT = 1;
+    private static final byte JUMP = 2;
+    private static final byte BEGIN = 3;
+    private static final byte END = 4;
+    private static final byte MATCH = 5;
+    private static final byte WORD_BOUNDARY = 6;
+
+    // The instructions of the program. Characters are matched against sorted, non-overlapping ranges
+    // of code points, branches continue at both targets, and all other instructions at the next one.
+    private final byte[] ops;
+    private final int[] targets;
+    private final int[] alternateTargets;
+    private final int[][] ranges;
+    private final boolean hasWordBoundaries;
+    private final ThreadLocal<Threads> threads;
+
+    private LinearRegex(Node root) {
+        int size = root.size() + 1;
+        this.ops = new byte[size];
+        this.targets = new int[size];
+        this.alternateTargets = new int[size];
+        this.ranges = new int[size][];
+        int end = emit(root, 0);
+        ops[end] = MATCH;
+        boolean hasWordBoundaries = false;
+        for (byte op : ops) {
+            hasWordBoundaries |= op == WORD_BOUNDARY;
+        }
+        this.hasWordBoundaries = hasWordBoundaries;
+        this.threads = ThreadLocal.withInitial(() -> new Threads(size));
+    }
+
+    /** Returns whether the pattern only uses supported constructs and doesn't compile to too many instructions. */
+    static boolean isSupported(String regex) {
+        Node node = new Parser(regex).parse();
+        return node != null && node.size() <= MAX_PROGRAM_SIZE;
+    }
+
+    /**
+     * Compiles the patterns into a single program that matches if any of them is found.
+     *
+     * @throws IllegalArgumentException if any pattern isn't supported
+     */
+    static LinearRegex compile(List<String> regexes) {
+        List<Node> alternatives = new ArrayList<>(regexes.size());
+        for (String regex : regexes) {
+            if (!isSupported(regex)) {
+                throw new IllegalArgumentException("Unsupported pattern: " + regex);
+            }
+            alternatives.add(new Parser(regex).parse());
+        }
+        return new LinearRegex(
+                alternatives.size() == 1 ? alternatives.get(0) : new Node(Node.ALTERNATION, alternatives));
+    }
+
+    /** Returns whether any of the patterns is found in the input, like {@link java.util.regex.Matcher#find()}. */
+    boolean find(CharSequence input) {
+        Threads state = threads.get();
+        state.begin(input.length());
+        int[] current = state.current;
+        int[] next = state.next;
+        int currentCount = 0;
+        int position = 0;
+        // Only tracked for word boundaries: whether there is one at the position, whether the character
+        // before it is a word character, and whether a non-spacing mark there would have a base character
+        boolean boundary = hasWordBoundaries && isWordAt(input, 0, false);
+        boolean wordBefore = false;
+        boolean baseBefore = false;
+        while (true) {
+            // A match may start at any position, so a new thread starts at each one
+            int added = addThread(state, current, currentCount, 0, input, position, boundary);
+            if (added < 0) {
+                return true;
+            }
+            currentCount = added;
+            if (position == input.length()) {
+                return false;
+            }
+            int codePoint = Character.codePointAt(input, position);
+            int nextPosition = position + Character.charCount(codePoint);
+            if (hasWordBoundaries) {
+                boolean nonSpacingMark = Character.getType(codePoint) == Character.NON_SPACING_MARK;
+                // Like java.util.regex, which looks at single chars for the base of a mark, so the
+                // surrogates of a supplementary character are never a base or a mark
+                boolean bmp = Character.isBmpCodePoint(codePoint);
+                wordBefore = isWordCharacter(codePoint) || (nonSpacingMark && bmp && baseBefore);
+                baseBefore = bmp && (Character.isLetterOrDigit(codePoint) || (nonSpacingMark && baseBefore));
+                boolean wordAfter = isWordAt(input, nextPosition, baseBefore);
+                boundary = wordBefore != wordAfter;
+            }
+            state.advance();
+            int nextCount = 0;
+            for (int i = 0; i < currentCount; i++) {
+                int pc = current[i];
+                if (contains(ranges[pc], codePoint)) {
+                    nextCount = addThread(state, next, nextCount, pc + 1, input, nextPosition, boundary);
+                    if (nextCount < 0) {
+                        return true;
+                    }
+                }
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            currentCount = nextCount;
+            position = nextPosition;
+        }
+    }
+
+    /**
+     * Adds the character instructions reachable from the given one without consuming input to the list,
+     * unless they are on it already. Returns the new length of the list, or -1 if a match was reached.
+     */
+    private int addThread(
+            Threads state, int[] list, int count, int start, CharSequence input, int position, boolean boundary) {
+        int[] stack = state.stack;
+        int top = 0;
+        stack[top++] = start;
+        while (top > 0) {
+            int pc = stack[--top];
+            if (!state.mark(pc)) {
+                continue;
+            }
+            switch (ops[pc]) {
+                case CHAR:
+                    list[count++] = pc;
+                    break;
+                case SPLIT:
+                    stack[top++] = alternateTargets[pc];
+                    stack[top++] = targets[pc];
+                    break;
+                case JUMP:
+                    stack[top++] = targets[pc];
+                    break;
+                case BEGIN:
+                    if (position == 0) {
+                        stack[top++] = pc + 1;
+                    }
+                    break;
+                case END:
+                    if (isAtEnd(input, position)) {
+                        stack[top++] = pc + 1;
+                    }
+                    break;
+                case WORD_BOUNDARY:
+                    if (boundary) {
+                        stack[top++] = pc + 1;
+                    }
+                    break;
+                default:
+                    return -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether {@code $} matches at the position, which is at the end of the input or before a
+     * line terminator at its end, like without {@link java.util.regex.Pattern#MULTILINE}.
+     */
+    private static boolean isAtEnd(CharSequence input, int position) {
+        int length = input.length();
+        if (position == length) {
+            return true;
+        }
+        if (position == length - 2) {
+            return input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+        }
+        if (position == length - 1) {
+            char c = input.charAt(position);
+            if (c == '\n') {
+                // Not between the characters of \r\n
+                return position == 0 || input.charAt(position - 1) != '\r';
+            }
+            return c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the character at the position counts as a word character for {@code \b}, given
+     * whether a non-spacing mark there would have a base character before it.
+     */
+    private static boolean isWordAt(CharSequence input, int position, boolean baseBefore) {
+        if (position == input.length()) {
+            return false;
+        }
+        int codePoint = Character.codePointAt(input, position);
+        return isWordCharacter(codePoint) || (Character.getType(codePoint) == Character.NON_SPACING_MARK && baseBefore);
+    }
+
+    private static boolean isWordCharacter(int codePoint) {
+        if (codePoint == '_') {
+            return true;
+        }
+        if (UNICODE_WORD_BOUNDARIES) {
+            return Character.isLetterOrDigit(codePoint);
+        }
+        return (codePoint >= '0' && codePoint <= '9')
+                || (codePoint >= 'A' && codePoint <= 'Z')
+                || (codePoint >= 'a' && codePoint <= 'z');
+    }
+
+    private static boolean contains(int[] ranges, int codePoint) {
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (codePoint < ranges[middle * 2]) {
+                high = middle - 1;
+            } else if (codePoint > ranges[middle * 2 + 1]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes the instructions of the node starting at the given index and returns the index after them. */
+    private int emit(Node node, int pc) {
+        switch (node.type) {
+            case Node.CHARACTER:
+                ops[pc] = CHAR;
+                ranges[pc] = node.ranges;
+                return pc + 1;
+            case Node.BEGIN:
+                ops[pc] = BEGIN;
+                return pc + 1;
+            case Node.END:
+                ops[pc] = END;
+                return pc + 1;
+            case Node.WORD_BOUNDARY:
+                ops[pc] = WORD_BOUNDARY;
+                return pc + 1;
+            case Node.CONCATENATION:
+                for (Node child : node.children) {
+                    pc = emit(child, pc);
+                }
+                return pc;
+            case Node.ALTERNATION:
+                List<Integer> jumps = new ArrayList<>();
+                for (int i = 0; i < node.children.size(); i++) {
+                    if (i == node.children.size() - 1) {
+                        pc = emit(node.children.get(i), pc);
+                        break;
+                    }
+                    int split = pc;
+                    ops[split] = SPLIT;
+                    targets[split] = split + 1;
+                    pc = emit(node.children.get(i), split + 1);
+                    ops[pc] = JUMP;
+                    jumps.add(pc++);
+                    alternateTargets[split] = pc;
+                }
+                for (int jump : jumps) {
+                    targets[jump] = pc;
+                }
+                return pc;
+            default:
+                Node child = node.children.get(0);
+                for (int i = 0; i < node.min; i++) {
+                    pc = emit(child, pc);
+                }
+                if (node.max < 0) {
+                    int split = pc;
+                    ops[split] = SPLIT;
+                    targets[split] = split + 1;
+                    pc = emit(child, split + 1);
+                    ops[pc] = JUMP;
+                    targets[pc++] = split;
+                    alternateTargets[split] = pc;
+                    return pc;
+                }
+                List<Integer> splits = new ArrayList<>();
+                for (int i = node.min; i < node.max; i++) {
+                    ops[pc] = SPLIT;
+                    targets[pc] = pc + 1;
+                    splits.add(pc);
+                    pc = emit(child, pc + 1);
+                }
+                for (int split : splits) {
+                    alternateTargets[split] = pc;
+                }
+                return pc;
+        }
+    }
+
+    /** Lists of the threads at the current and next position, reused across calls on the same thread. */
+    private static class Threads {
+        final int[] current;
+        final int[] next;
+        final int[] stack;
+        // The generation in which an instruction was last added to a list, so lists don't need clearing
+        final int[] marks;
+        int generation;
+
+        Threads(int size) {
+            this.current = new int[size];
+            this.next = new int[size];
+            // Each instruction is pushed at most once per target pointing at it
+            this.stack = new int[size * 2 + 1];
+            this.marks = new int[size];
+        }
+
+        void begin(int inputLength) {
+            if (generation > Integer.MAX_VALUE - inputLength - 2) {
+                Arrays.fill(marks, 0);
+                generation = 0;
+            }
+            generation++;
+        }
+
+        void advance() {
+            generation++;
+        }
+
+        boolean mark(int pc) {
+            if (marks[pc] == generation) {
+                return false;
+            }
+            marks[pc] = generation;
+            return true;
+        }
+    }
+
+    private static class Node {
+        static final int CHARACTER = 0;
+        static final int BEGIN = 1;
+        static final int END = 2;
+        static final int CONCATENATION = 3;
+        static final int ALTERNATION = 4;
+        static final int REPETITION = 5;
+        static final int WORD_BOUNDARY = 6;
+
+        final int type;
+        final List<Node> children;
+        final int[] ranges;
+        final int min;
+        final int max;
+
+        Node(int type, List<Node> children) {
+            this(type, children, null, 0, 0);
+        }
+
+        Node(int type, List<Node> children, int[] ranges, int min, int max) {
+            this.type = type;
+            this.children = children;
+            this.ranges = ranges;
+            this.min = min;
+            this.max = max;
+        }
+
+        /** Returns the number of instructions of the node, saturating well above the maximum program size. */
+        int size() {
+            long size;
+            switch (type) {
+                case CONCATENATION:
+                    size = 0;
+                    for (Node child : children) {
+                        size += child.size();
+                    }
+                    break;
+                case ALTERNATION:
+                    size = 2L * (children.size() - 1);
+                    for (Node child : children) {
+                        size += child.size();
+                    }
+                    break;
+                case REPETITION:
+                    long childSize = children.get(0).size();
+                    size = min * childSize + (max < 0 ? childSize + 2 : (max - min) * (childSize + 1));
+                    break;
+                default:
+                    size = 1;
+            }
+            return (int) Math.min(size, Integer.MAX_VALUE / 4);
+        }
+    }
+
+    /**
+     * Parses the supported subset of the pattern syntax into nodes. Patterns have already been compiled
+     * by {@link java.util.regex.Pattern}, so anything unexpected is treated as unsupported rather than
+     * invalid, and the parser returns null.
+     */
+    private static class Parser {
+        private static final int MAX_REPETITIONS = 1000;
+
+        private final String regex;
+        private int index;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parse() {
+            try {
+                Node node = parseAlternation();
+                return index == regex.length() ? node : null;
+            } catch (UnsupportedOperationException e) {
+                return null;
+            }
+        }
+
+        private Node parseAlternation() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseConcatenation());
+            while (peek() == '|') {
+                index++;
+                alternatives.add(parseConcatenation());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Node(Node.ALTERNATION, alternatives);
+        }
+
+        private Node parseConcatenation() {
+            List<Node> items = new ArrayList<>();
+            while (index < regex.length() && peek() != '|' && peek() != ')') {
+                if (regex.startsWith("(?", index)) {
+                    int end = skipCaseInsensitiveFlags(index + 1);
+                    if (end > index + 2 && peek(end) == ')') {
+                        // Case is already ignored, so (?i) changes nothing for the rest of the group
+                        index = end + 1;
+                        continue;
+                    }
+                }
+                items.add(parseRepetition(parseAtom()));
+            }
+            return new Node(Node.CONCATENATION, items);
+        }
+
+        private Node parseRepetition(Node atom) {
+            int min;
+            int max;
+            switch (peek()) {
+                case '*':
+                    min = 0;
+                    max = -1;
+                    index++;
+                    break;
+                case '+':
+                    min = 1;
+                    max = -1;
+                    index++;
+                    break;
+                case '?':
+                    min = 0;
+                    max = 1;
+                    index++;
+                    break;
+                case '{':
+                    index++;
+                    min = parseNumber();
+                    max = min;
+                    if (peek() == ',') {
+                        index++;
+                        max = peek() == '}' ? -1 : parseNumber();
+                    }
+                    expect('}');
+                    break;
+                default:
+                    return atom;
+            }
+            if (peek() == '?') {
+                // Lazy quantifiers match the same inputs, only the matched range differs
+                index++;
+            } else if (peek() == '+') {
+                throw unsupported();
+            }
+            if (atom.type == Node.BEGIN || atom.type == Node.END || atom.type == Node.WORD_BOUNDARY) {
+                throw unsupported();
+            }
+            return new Node(Node.REPETITION, List.of(atom), null, min, max);
+        }
+
+        private Node parseAtom() {
+            int c = regex.codePointAt(index);
+            index += Character.charCount(c);
+            switch (c) {
+                case '(':
+                    if (peek() == '?') {
+                        // Non-capturing groups, which may set the case insensitive flag like (?i:...)
+                        int end = skipCaseInsensitiveFlags(index);
+                        if (peek(end) != ':') {
+                            throw unsupported();
+                        }
+                        index = end + 1;
+                    }
+                    Node group = parseAlternation();
+                    expect(')');
+                    return group;
+                case '[':
+                    return character(parseClass());
+                case '.':
+                    return character(complement(LINE_TERMINATORS));
+                case '^':
+                    return new Node(Node.BEGIN, List.of());
+                case '$':
+                    return new Node(Node.END, List.of());
+                case '\\':
+                    if (peek() == 'b' && !regex.startsWith("b{", index)) {
+                        index++;
+                        return new Node(Node.WORD_BOUNDARY, List.of());
+                    }
+                    int[] escaped = parseEscape();
+                    return character(escaped);
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw unsupported();
+                default:
+                    return character(new int[] {c, c});
+            }
+        }
+
+        /** Parses a class after its opening bracket and returns its ranges. */
+        private int[] parseClass() {
+            boolean negated = false;
+            if (peek() == '^') {
+                negated = true;
+                index++;
+            }
+            if (peek() == ']') {
+                throw unsupported();
+            }
+            List<int[]> items = new ArrayList<>();
+            while (peek() != ']') {
+                if (index >= regex.length() || peek() == '[' || regex.startsWith("&&", index)) {
+                    throw unsupported();
+                }
+                int[] item = parseClassItem();
+                if (peek() == '-' && index + 1 < regex.length() && regex.charAt(index + 1) != ']') {
+                    // A range, which must be between single characters
+                    index++;
+                    int[] end = parseClassItem();
+                    if (!isSingle(item) || !isSingle(end) || end[0] < item[0]) {
+                        throw unsupported();
+                    }
+                    item = new int[] {item[0], end[0]};
+                    if (peek() == '-' && index + 1 < regex.length() && regex.charAt(index + 1) != ']') {
+                        throw unsupported();
+                    }
+                }
+                items.add(item);
+            }
+            index++;
+            // Case is ignored for the characters of the class, before it is negated
+            int[] ranges = fold(union(items));
+            return negated ? complement(ranges) : ranges;
+        }
+
+        private int[] parseClassItem() {
+            int c = regex.codePointAt(index);
+            index += Character.charCount(c);
+            if (c == '\\') {
+                return parseEscape();
+            }
+            if (c == '[') {
+                throw unsupported();
+            }
+            return new int[] {c, c};
+        }
+
+        /** Parses an escape after its backslash and returns the ranges it matches. */
+        private int[] parseEscape() {
+            if (index >= regex.length()) {
+                throw unsupported();
+            }
+            int c = regex.codePointAt(index);
+            index += Character.charCount(c);
+            switch (c) {
+                case 'd':
+                    return DIGIT;
+                case 'D':
+                    return complement(DIGIT);
+                case 'w':
+                    return WORD;
+                case 'W':
+                    return complement(WORD);
+                case 's':
+                    return SPACE;
+                case 'S':
+                    return complement(SPACE);
+                case 't':
+                    return new int[] {'\t', '\t'};
+                case 'n':
+                    return new int[] {'\n', '\n'};
+                case 'r':
+                    return new int[] {'\r', '\r'};
+                case 'f':
+                    return new int[] {'\f', '\f'};
+                case 'a':
+                    return new int[] {0x07, 0x07};
+                case 'e':
+                    return new int[] {0x1B, 0x1B};
+                case 'x':
+                    int hex = parseHex(2);
+                    return new int[] {hex, hex};
+                case 'u':
+                    int unicode = parseHex(4);
+                    return new int[] {unicode, unicode};
+                default:
+                    if (c < 0x80 && Character.isLetterOrDigit(c)) {
+                        // Word boundaries, back references, quoting, properties and more
+                        throw unsupported();
+                    }
+                    return new int[] {c, c};
+            }
+        }
+
+        /** Returns the index after any case insensitive flags following the question mark at the index. */
+        private int skipCaseInsensitiveFlags(int start) {
+            int end = start + 1;
+            while (peek(end) == 'i') {
+                end++;
+            }
+            return end;
+        }
+
+        private int parseHex(int digits) {
+            if (index + digits > regex.length()) {
+                throw unsupported();
+            }
+            int value = 0;
+            for (int i = 0; i < digits; i++) {
+                int digit = Character.digit(regex.charAt(index++), 16);
+                if (digit < 0) {
+                    throw unsupported();
+                }
+                value = value * 16 + digit;
+            }
+            return value;
+        }
+
+        private int parseNumber() {
+            int start = index;
+            while (index < regex.length() && regex.charAt(index) >= '0' && regex.charAt(index) <= '9') {
+                index++;
+            }
+            if (index == start || index - start > 4) {
+                throw unsupported();
+            }
+            int number = Integer.parseInt(regex.substring(start, index));
+            if (number > MAX_REPETITIONS) {
+                throw unsupported();
+            }
+            return number;
+        }
+
+        private int peek() {
+            return peek(index);
+        }
+
+        private int peek(int at) {
+            return at < regex.length() ? regex.charAt(at) : -1;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw unsupported();
+            }
+            index++;
+        }
+
+        private static boolean isSingle(int[] ranges) {
+            return ranges.length == 2 && ranges[0] == ranges[1];
+        }
+
+        /**
+         * Returns a node matching the ranges, extended by the other case of ASCII letters. Ranges that
+         * treat surrogates and supplementary characters differently are unsupported, as {@link
+         * java.util.regex.Matcher#find()} may start a match between the surrogates of a pair.
+         */
+        private static Node character(int[] ranges) {
+            int[] folded = fold(ranges);
+            boolean anySurrogate = intersects(folded, Character.MIN_SURROGATE, Character.MAX_SURROGATE);
+            boolean allSurrogates = covers(folded, Character.MIN_SURROGATE, Character.MAX_SURROGATE);
+            boolean anySupplementary = intersects(folded, Character.MIN_SUPPLEMENTARY_CODE_POINT, MAX_CODE_POINT);
+            boolean allSupplementary = covers(folded, Character.MIN_SUPPLEMENTARY_CODE_POINT, MAX_CODE_POINT);
+            if (anySurrogate || anySupplementary) {
+                if (!allSurrogates || !allSupplementary) {
+                    throw unsupported();
+                }
+            }
+            return new Node(Node.CHARACTER, List.of(), folded, 0, 0);
+        }
+
+        private static int[] fold(int[] ranges) {
+            return union(List.of(ranges, shift(ranges, 'a', 'z', 'A' - 'a'), shift(ranges, 'A', 'Z', 'a' - 'A')));
+        }
+
+        /** Returns the part of the ranges between the bounds, moved by the offset. */
+        private static int[] shift(int[] ranges, int from, int to, int offset) {
+            List<Integer> shifted = new ArrayList<>();
+            for (int i = 0; i < ranges.length; i += 2) {
+                int start = Math.max(ranges[i], from);
+                int end = Math.min(ranges[i + 1], to);
+                if (start <= end) {
+                    shifted.add(start + offset);
+                    shifted.add(end + offset);
+                }
+            }
+            return shifted.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static boolean intersects(int[] ranges, int from, int to) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] <= to && ranges[i + 1] >= from) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean covers(int[] ranges, int from, int to) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] <= from && ranges[i + 1] >= to) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Returns the sorted, merged union of the ranges. */
+        private static int[] union(List<int[]> rangeLists) {
+            List<int[]> all = new ArrayList<>();
+            for (int[] ranges : rangeLists) {
+                for (int i = 0; i < ranges.length; i += 2) {
+                    all.add(new int[] {ranges[i], ranges[i + 1]});
+                }
+            }
+            all.sort((a, b) -> Integer.compare(a[0], b[0]));
+            List<Integer> merged = new ArrayList<>();
+            for (int[] range : all) {
+                int last = merged.size() - 1;
+                if (last > 0 && range[0] <= merged.get(last) + 1) {
+                    merged.set(last, Math.max(merged.get(last), range[1]));
+                } else {
+                    merged.add(range[0]);
+                    merged.add(range[1]);
+                }
+            }
+            return merged.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static int[] complement(int[] ranges) {
+            List<Integer> complement = new ArrayList<>();
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    complement.add(next);
+                    complement.add(ranges[i] - 1);
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= MAX_CODE_POINT) {
+                complement.add(next);
+                complement.add(MAX_CODE_POINT);
+            }
+            return complement.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static UnsupportedOperationException unsupported() {
+            return new UnsupportedOperationException();
+        }
+    }
+}
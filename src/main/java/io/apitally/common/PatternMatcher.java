@@ -0,0 +1,216 @@
+package io.apitally.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tells whether a name matches any of a list of case-insensitive patterns. The patterns are combined
+ * into a single alternation, so each name is scanned once instead of once per pattern, and decisions
+ * are cached by name, so repeated names are looked up instead of matched.
+ *
+ * <p>Names come from clients, so patterns are matched with {@link LinearRegex}, which takes linear time
+ * however badly a pattern is written. Patterns it doesn't support are logged at startup and matched
+ * with {@link java.util.regex} instead.
+ *
+ * <p>The cache is bounded and split into two generations. New decisions go into the current
+ * generation, and once it is full, it replaces the previous one, which is dropped as a whole. Names
+ * found in the previous generation are moved to the current one, so frequent names survive while
+ * high-cardinality input, e.g. paths with IDs, only ever evicts itself. Long names are not cached,
+ * and neither is anything if the maximum cache size is zero.
+ */
+public class PatternMatcher {
+    private static final Logger logger = LoggerFactory.getLogger(PatternMatcher.class);
+    private static final int MAX_CACHED_NAME_LENGTH = 256;
+
+    private final List<Pattern> patterns;
+    private final LinearRegex linearRegex;
+    private final List<Pattern> fallbackPatterns;
+    private final Pattern combinedFallbackPattern;
+    private final int generationSize;
+    private final Object rotationLock = new Object();
+    private volatile Generation currentGeneration = new Generation();
+    private volatile Generation previousGeneration = new Generation();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public PatternMatcher(List<String> patterns, int maxCacheSize) {
+        List<Pattern> compiledPatterns = new ArrayList<>(patterns.size());
+        List<Pattern> compiledFallbackPatterns = new ArrayList<>();
+        List<String> linearPatterns = new ArrayList<>();
+        List<String> fallbackPatterns = new ArrayList<>();
+        for (String pattern : patterns) {
+            // Invalid patterns fail here, so they are rejected the same way as before
+            Pattern compiledPattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            compiledPatterns.add(compiledPattern);
+            if (LinearRegex.isSupported(pattern)) {
+                linearPatterns.add(pattern);
+            } else {
+                logger.warn(
+                        "Pattern '{}' uses constructs not supported by the linear-time regex engine and is matched "
+                                + "with backtracking, which may be slow for some inputs",
+                        pattern);
+                fallbackPatterns.add(pattern);
+                compiledFallbackPatterns.add(compiledPattern);
+            }
+        }
+        this.patterns = Collections.unmodifiableList(compiledPatterns);
+        this.linearRegex = linearPatterns.isEmpty() ? null : LinearRegex.compile(linearPatterns);
+        this.fallbackPatterns = Collections.unmodifiableList(compiledFallbackPatterns);
+        this.combinedFallbackPattern = combine(fallbackPatterns);
+        this.generationSize = maxCacheSize > 0 ? Math.max(1, maxCacheSize / 2) : 0;
+    }
+
+    /** Returns the compiled patterns, in the order they were given. */
+    public List<Pattern> getPatterns() {
+        return patterns;
+    }
+
+    /** Returns the patterns not supported by {@link LinearRegex}, which are matched with backtracking. */
+    List<Pattern> getFallbackPatterns() {
+        return fallbackPatterns;
+    }
+
+    /** Returns whether any pattern is found in the name. */
+    public boolean matches(String name) {
+        if (patterns.isEmpty()) {
+            return false;
+        }
+        if (generationSize == 0 || name.length() > MAX_CACHED_NAME_LENGTH) {
+            missCount.increment();
+            return evaluate(name);
+        }
+        Generation current = currentGeneration;
+        Boolean decision = current.decisions.get(name);
+        if (decision != null) {
+            hitCount.increment();
+            return decision;
+        }
+        decision = previousGeneration.decisions.get(name);
+        if (decision != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+            decision = evaluate(name);
+        }
+        cache(current, name, decision);
+        return decision;
+    }
+
+    /** Returns the number of names whose decision was found in the cache. */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /** Returns the number of names that were matched against the patterns. */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /** Returns the number of cached decisions dropped to keep the cache within its bounds. */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /** Returns the number of cached decisions, which is only an estimate while names are matched. */
+    public int getCacheSize() {
+        return currentGeneration.decisions.size() + previousGeneration.decisions.size();
+    }
+
+    private boolean evaluate(String name) {
+        if (linearRegex != null && linearRegex.find(name)) {
+            return true;
+        }
+        if (combinedFallbackPattern != null) {
+            return combinedFallbackPattern.matcher(name).find();
+        }
+        for (Pattern pattern : fallbackPatterns) {
+            if (pattern.matcher(name).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void cache(Generation current, String name, Boolean decision) {
+        if (current.decisions.putIfAbsent(name, decision) != null || current.size.incrementAndGet() < generationSize) {
+            return;
+        }
+        synchronized (rotationLock) {
+            // Another thread may have rotated the generations already
+            if (currentGeneration == current) {
+                evictionCount.add(previousGeneration.decisions.size());
+                previousGeneration = current;
+                currentGeneration = new Generation();
+            }
+        }
+    }
+
+    /**
+     * Returns the patterns combined into a single case-insensitive alternation, or null if there is
+     * only one or they can't be combined without changing what they match.
+     */
+    private static Pattern combine(List<String> patterns) {
+        if (patterns.size() < 2) {
+            return null;
+        }
+        StringBuilder regex = new StringBuilder();
+        for (String pattern : patterns) {
+            if (!isCombinable(pattern)) {
+                return null;
+            }
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append("(?:").append(pattern).append(')');
+        }
+        try {
+            return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+        } catch (PatternSyntaxException e) {
+            // E.g. named groups used by more than one pattern
+            return null;
+        }
+    }
+
+    /**
+     * Returns false for patterns that may reach beyond their group in an alternation: quoting without
+     * an end, comments, and back references, which are numbered across all patterns.
+     */
+    private static boolean isCombinable(String pattern) {
+        for (int i = 0; i < pattern.length() - 1; i++) {
+            char c = pattern.charAt(i);
+            char next = pattern.charAt(i + 1);
+            if (c == '\\') {
+                if (next == 'Q' || next == 'k' || (next >= '1' && next <= '9')) {
+                    return false;
+                }
+                i++;
+            } else if (c == '(' && next == '?') {
+                // Inline flags, of which only comments are a concern
+                for (int j = i + 2; j < pattern.length(); j++) {
+                    char flag = pattern.charAt(j);
+                    if (flag == 'x') {
+                        return false;
+                    }
+                    if (flag != '-' && !Character.isLetter(flag)) {
+                        break;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static class Generation {
+        final ConcurrentHashMap<String, Boolean> decisions = new ConcurrentHashMap<>();
+        final AtomicInteger size = new AtomicInteger();
+    }
+}
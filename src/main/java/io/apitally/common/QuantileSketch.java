@@ -0,0 +1,196 @@
+package io.apitally.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mergeable quantile sketch with relative error guarantees (DDSketch). Values are mapped to
+ * logarithmically sized bins, so any quantile is returned with a relative error of at most the
+ * configured relative accuracy. Memory is bounded by the maximum number of bins: if values span a
+ * wider range, the lowest bins are collapsed, which only affects the accuracy of the lowest
+ * quantiles.
+ *
+ * <p>Not thread-safe. Each instance is expected to have a single writer, with sketches from
+ * different threads or intervals combined using {@link #merge(QuantileSketch)}.
+ */
+public class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final int DEFAULT_MAX_BINS = 2048;
+
+    private static final double MIN_INDEXABLE_VALUE = 1e-3;
+    private static final int INITIAL_BINS = 32;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final int maxBins;
+    private long[] counts = new long[0];
+    private int offset;
+    private int minIndex = Integer.MAX_VALUE;
+    private int maxIndex = Integer.MIN_VALUE;
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBins) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1");
+        }
+        if (maxBins < 1) {
+            throw new IllegalArgumentException("Max bins must be positive");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.maxBins = maxBins;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public int getMaxBins() {
+        return maxBins;
+    }
+
+    /** Adds a value. Values below {@value #MIN_INDEXABLE_VALUE} (including negative ones) count as zero. */
+    public void add(double value) {
+        if (value > MIN_INDEXABLE_VALUE) {
+            increment((int) Math.ceil(Math.log(value) / logGamma), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.gamma != gamma) {
+            throw new IllegalArgumentException("Cannot merge sketches with different relative accuracy");
+        }
+        for (int index = other.minIndex; index <= other.maxIndex; index++) {
+            long binCount = other.counts[index - other.offset];
+            if (binCount > 0) {
+                increment(index, binCount);
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(relativeAccuracy, maxBins);
+        copy.merge(this);
+        return copy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the value at the given quantile (0-1), or NaN if the sketch is empty. The result is
+     * within the relative accuracy of the exact value at rank {@code floor(quantile * (count - 1))}.
+     */
+    public double getQuantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (Math.min(Math.max(quantile, 0.0), 1.0) * (count - 1));
+        long seen = zeroCount;
+        if (seen > rank) {
+            return 0.0;
+        }
+        for (int index = minIndex; index <= maxIndex; index++) {
+            seen += counts[index - offset];
+            if (seen > rank) {
+                return getValue(index);
+            }
+        }
+        return getValue(maxIndex);
+    }
+
+    /** Returns the number of bins currently spanned, which bounds the memory used by this sketch. */
+    public int getBinCount() {
+        return minIndex <= maxIndex ? maxIndex - minIndex + 1 : 0;
+    }
+
+    public long getZeroCount() {
+        return zeroCount;
+    }
+
+    /** Returns the non-empty bins, keyed by their logarithmic index. */
+    public Map<Integer, Long> getBins() {
+        Map<Integer, Long> bins = new TreeMap<>();
+        for (int index = minIndex; index <= maxIndex; index++) {
+            long binCount = counts[index - offset];
+            if (binCount > 0) {
+                bins.put(index, binCount);
+            }
+        }
+        return bins;
+    }
+
+    private double getValue(int index) {
+        // Midpoint of the bin (gamma^(index-1), gamma^index] in terms of relative error
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private void increment(int index, long n) {
+        if (minIndex > maxIndex) {
+            ensureCapacity(index, index);
+            minIndex = index;
+            maxIndex = index;
+        } else if (index < minIndex) {
+            // Values below the lowest bin that still fits are collapsed into that bin
+            index = Math.max(index, maxIndex - maxBins + 1);
+            ensureCapacity(index, maxIndex);
+            minIndex = index;
+        } else if (index > maxIndex) {
+            int lowestIndex = index - maxBins + 1;
+            if (lowestIndex > minIndex) {
+                collapseBelow(lowestIndex);
+            }
+            ensureCapacity(minIndex, index);
+            maxIndex = index;
+        }
+        counts[index - offset] += n;
+    }
+
+    private void collapseBelow(int lowestIndex) {
+        long collapsed = 0;
+        for (int index = minIndex; index <= Math.min(lowestIndex - 1, maxIndex); index++) {
+            collapsed += counts[index - offset];
+            counts[index - offset] = 0;
+        }
+        if (lowestIndex > maxIndex) {
+            // All bins are collapsed, start over with a single bin
+            minIndex = Integer.MAX_VALUE;
+            maxIndex = Integer.MIN_VALUE;
+            ensureCapacity(lowestIndex, lowestIndex);
+            maxIndex = lowestIndex;
+        } else {
+            ensureCapacity(lowestIndex, maxIndex);
+        }
+        minIndex = lowestIndex;
+        counts[lowestIndex - offset] += collapsed;
+    }
+
+    private void ensureCapacity(int newMinIndex, int newMaxIndex) {
+        if (counts.length > 0 && newMinIndex >= offset && newMaxIndex < offset + counts.length) {
+            return;
+        }
+        int range = newMaxIndex - newMinIndex + 1;
+        int length = Math.min(maxBins, Math.max(Math.max(INITIAL_BINS, counts.length * 2), range));
+        length = Math.max(length, range);
+        long[] newCounts = new long[length];
+        int newOffset = newMinIndex - (length - range) / 2;
+        for (int index = Math.max(minIndex, newMinIndex); index <= Math.min(maxIndex, newMaxIndex); index++) {
+            newCounts[index - newOffset] = counts[index - offset];
+        }
+        counts = newCounts;
+        offset = newOffset;
+    }
+}
@@ -0,0 +1,207 @@
+package io.apitally.common;
+
+import io.apitally.common.dto.ResponseTimeSketch;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Hourly rollups of response time sketches per request counter key. The sketches of each sync
+ * interval are merged into the rollup of the hour the interval started in, and rollups older than
+ * the retention period are dropped. This allows computing accurate tail latencies over a whole day
+ * without keeping raw data.
+ *
+ * <p>The number of distinct keys retained across all hours is bounded by a key budget, where a key
+ * with rollups in several hours counts once. Sketches for new keys beyond this budget are folded
+ * into overflow keys with consumer and path set to {@value
+ * RequestCounter#OVERFLOW_KEY_PART}, like in {@link RequestCounter}.
+ */
+public class QuantileSketchRollups {
+    public static final int DEFAULT_RETENTION_HOURS = 24;
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final int retentionHours;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final TreeMap<Long, Map<SketchKey, QuantileSketch>> rollups = new TreeMap<>();
+    // Number of retained hours with a rollup for each distinct key, not including overflow keys
+    private final Map<SketchKey, Integer> keyHourCounts = new HashMap<>();
+    private long foldedSketchCount = 0;
+
+    public QuantileSketchRollups() {
+        this(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, QuantileSketch.DEFAULT_MAX_BINS, DEFAULT_RETENTION_HOURS);
+    }
+
+    public QuantileSketchRollups(double relativeAccuracy, int maxBins, int retentionHours) {
+        this(relativeAccuracy, maxBins, retentionHours, RequestCounter.DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param maxKeys maximum number of distinct consumer, method, path and status code combinations
+     *     retained across all hours, not counting overflow keys
+     */
+    public QuantileSketchRollups(double relativeAccuracy, int maxBins, int retentionHours, int maxKeys) {
+        this(relativeAccuracy, maxBins, retentionHours, maxKeys, () -> System.currentTimeMillis() / 1000);
+    }
+
+    QuantileSketchRollups(
+            double relativeAccuracy, int maxBins, int retentionHours, int maxKeys, LongSupplier epochSecondClock) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.retentionHours = retentionHours;
+        this.maxKeys = maxKeys;
+        this.clock = epochSecondClock;
+    }
+
+    /** Creates an empty sketch with the accuracy and memory bound of these rollups. */
+    public QuantileSketch newSketch() {
+        return new QuantileSketch(relativeAccuracy, maxBins);
+    }
+
+    /**
+     * Merges the sketch of a sync interval into the rollup of the hour the interval started in.
+     * Sketches of intervals that started before the retention period are dropped.
+     */
+    public synchronized void add(
+            long intervalStartEpochSecond,
+            String consumer,
+            String method,
+            String path,
+            int statusCode,
+            QuantileSketch sketch) {
+        long oldestHour = getHour(clock.getAsLong()) - (retentionHours - 1) * SECONDS_PER_HOUR;
+        SortedMap<Long, Map<SketchKey, QuantileSketch>> expired = rollups.headMap(oldestHour);
+        for (Map<SketchKey, QuantileSketch> sketches : expired.values()) {
+            for (SketchKey expiredKey : sketches.keySet()) {
+                keyHourCounts.computeIfPresent(expiredKey, (k, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+        expired.clear();
+
+        long hour = getHour(intervalStartEpochSecond);
+        if (hour < oldestHour) {
+            return;
+        }
+        Map<SketchKey, QuantileSketch> sketches = rollups.computeIfAbsent(hour, h -> new HashMap<>());
+        SketchKey key = new SketchKey(consumer, method, path, statusCode);
+        QuantileSketch rollup = sketches.get(key);
+        if (rollup == null) {
+            if (!keyHourCounts.containsKey(key) && keyHourCounts.size() >= maxKeys) {
+                // Key budget is exhausted, fold into overflow key
+                foldedSketchCount++;
+                key = new SketchKey(
+                        RequestCounter.OVERFLOW_KEY_PART, method, RequestCounter.OVERFLOW_KEY_PART, statusCode);
+                rollup = sketches.get(key);
+                if (rollup == null) {
+                    rollup = newSketch();
+                    sketches.put(key, rollup);
+                }
+            } else {
+                rollup = newSketch();
+                sketches.put(key, rollup);
+                keyHourCounts.merge(key, 1, Integer::sum);
+            }
+        }
+        rollup.merge(sketch);
+    }
+
+    /**
+     * Returns the number of interval sketches that were folded into overflow keys because the key
+     * budget was exceeded.
+     */
+    public synchronized long getFoldedSketchCount() {
+        return foldedSketchCount;
+    }
+
+    /**
+     * Returns the merged response time sketch (in milliseconds) for the given key over the hours
+     * overlapping the given time range, or null if there is no data.
+     */
+    public synchronized QuantileSketch getSketch(
+            String consumer, String method, String path, int statusCode, long fromEpochSecond, long toEpochSecond) {
+        SketchKey key = new SketchKey(consumer, method, path, statusCode);
+        QuantileSketch merged = null;
+        for (Map<SketchKey, QuantileSketch> sketches : rollups.subMap(
+                        getHour(fromEpochSecond), true, toEpochSecond, true)
+                .values()) {
+            QuantileSketch sketch = sketches.get(key);
+            if (sketch != null) {
+                if (merged == null) {
+                    merged = newSketch();
+                }
+                merged.merge(sketch);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the response time in milliseconds at the given quantile (0-1) for the given key over
+     * the retention period, or NaN if there is no data.
+     */
+    public double getQuantile(String consumer, String method, String path, int statusCode, double quantile) {
+        QuantileSketch sketch = getSketch(consumer, method, path, statusCode, 0, Long.MAX_VALUE);
+        return sketch != null ? sketch.getQuantile(quantile) : Double.NaN;
+    }
+
+    /** Returns all retained rollups, for example to persist or export them. */
+    public synchronized List<ResponseTimeSketch> dump() {
+        List<ResponseTimeSketch> data = new ArrayList<>();
+        rollups.forEach((hour, sketches) -> sketches.forEach((key, sketch) -> data.add(new ResponseTimeSketch(
+                hour,
+                key.consumer.isEmpty() ? null : key.consumer,
+                key.method,
+                key.path,
+                key.statusCode,
+                sketch.getRelativeAccuracy(),
+                sketch.getCount(),
+                sketch.getZeroCount(),
+                sketch.getBins()))));
+        return data;
+    }
+
+    private static long getHour(long epochSecond) {
+        return epochSecond - Math.floorMod(epochSecond, SECONDS_PER_HOUR);
+    }
+
+    private static final class SketchKey {
+        private final String consumer;
+        private final String method;
+        private final String path;
+        private final int statusCode;
+
+        SketchKey(String consumer, String method, String path, int statusCode) {
+            this.consumer = consumer != null ? consumer : "";
+            this.method = method.toUpperCase();
+            this.path = path;
+            this.statusCode = statusCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SketchKey)) {
+                return false;
+            }
+            SketchKey other = (SketchKey) o;
+            return statusCode == other.statusCode
+                    && method.equals(other.method)
+                    && consumer.equals(other.consumer)
+                    && Objects.equals(path, other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(consumer, method, path, statusCode);
+        }
+    }
+}
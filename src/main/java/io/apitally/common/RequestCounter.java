@@ -2,25 +2,57 @@ package io.apitally.common;
 
 import io.apitally.common.dto.Requests;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class RequestCounter {
-    private final Map<String, Integer> requestCounts;
-    private final Map<String, Long> requestSizeSums;
-    private final Map<String, Long> responseSizeSums;
-    private final Map<String, Map<Integer, Integer>> responseTimes;
-    private final Map<String, Map<Integer, Integer>> requestSizes;
-    private final Map<String, Map<Integer, Integer>> responseSizes;
+    private static final Logger logger = LoggerFactory.getLogger(RequestCounter.class);
+
+    public static final int DEFAULT_MAX_KEYS = 10_000;
+    public static final String OVERFLOW_KEY_PART = "<other>";
+    private static final int RESPONSE_TIME_BIN_WIDTH_MS = 10;
+    private static final int SIZE_DENSE_BINS = 16; // up to 16 KB
+
+    private final int maxKeys;
+    private final int responseTimePrecisionBits;
+    private final ShardedBuffer<Cells> buffer;
+    private final LongAdder foldedRequestCount = new LongAdder();
+    private volatile IntervalKeys intervalKeys = new IntervalKeys();
+    private volatile Map<RequestKey, LatencyHistogram> lastResponseTimes = Map.of();
+    private volatile QuantileSketchRollups quantileSketchRollups;
+    private long intervalStartEpochSecond = System.currentTimeMillis() / 1000;
+    private long lastFoldedRequestCount = 0;
 
     public RequestCounter() {
-        this.requestCounts = new ConcurrentHashMap<>();
-        this.requestSizeSums = new ConcurrentHashMap<>();
-        this.responseSizeSums = new ConcurrentHashMap<>();
-        this.responseTimes = new ConcurrentHashMap<>();
-        this.requestSizes = new ConcurrentHashMap<>();
-        this.responseSizes = new ConcurrentHashMap<>();
+        this(DEFAULT_MAX_KEYS, LatencyHistogram.DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * @param maxKeys maximum number of distinct consumer, method, path and status code combinations
+     *     counted per sync interval, across all threads. Requests for new combinations beyond this
+     *     budget are folded into overflow keys with consumer and path set to {@value
+     *     #OVERFLOW_KEY_PART}. Each thread counts into cells of its own, so between syncs there may
+     *     be up to this many cells per recording thread, plus one overflow cell per method and
+     *     status code. Threads of a pool usually see the same keys, so this bound is rarely
+     *     approached.
+     * @param responseTimePrecisionBits precision of the response time histograms, see {@link
+     *     LatencyHistogram}
+     */
+    public RequestCounter(int maxKeys, int responseTimePrecisionBits) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("Max keys must be at least 1");
+        }
+        this.maxKeys = maxKeys;
+        this.responseTimePrecisionBits = responseTimePrecisionBits;
+        this.buffer = new ShardedBuffer<>(Cells::new, Cells::clear);
     }
 
     public void addRequest(
@@ -28,76 +60,299 @@ public class RequestCounter {
             String method,
             String path,
             int statusCode,
-            long responseTime,
+            long responseTimeMillis,
             long requestSize,
             long responseSize) {
-        String key = String.join("|", consumer, method.toUpperCase(), path, String.valueOf(statusCode));
-
-        // Increment request count
-        requestCounts.merge(key, 1, Integer::sum);
-
-        // Add response time (rounded to nearest 10ms)
-        responseTimes.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
-        Map<Integer, Integer> responseTimeMap = responseTimes.get(key);
-        int responseTimeMsBin = (int) (Math.floor(responseTime / 10.0) * 10);
-        responseTimeMap.merge(responseTimeMsBin, 1, Integer::sum);
-
-        // Add request size (rounded down to nearest KB)
-        if (requestSize >= 0) {
-            requestSizeSums.merge(key, requestSize, Long::sum);
-            requestSizes.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
-            Map<Integer, Integer> requestSizeMap = requestSizes.get(key);
-            int requestSizeKbBin = (int) Math.floor(requestSize / 1000.0);
-            requestSizeMap.merge(requestSizeKbBin, 1, Integer::sum);
-        }
-
-        // Add response size (rounded down to nearest KB)
-        if (responseSize >= 0) {
-            responseSizeSums.merge(key, responseSize, Long::sum);
-            responseSizes.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
-            Map<Integer, Integer> responseSizeMap = responseSizes.get(key);
-            int responseSizeKbBin = (int) Math.floor(responseSize / 1000.0);
-            responseSizeMap.merge(responseSizeKbBin, 1, Integer::sum);
+        addRequestNanos(
+                consumer,
+                method,
+                path,
+                statusCode,
+                TimeUnit.MILLISECONDS.toNanos(responseTimeMillis),
+                requestSize,
+                responseSize);
+    }
+
+    public void addRequestNanos(
+            String consumer,
+            String method,
+            String path,
+            int statusCode,
+            long responseTimeNanos,
+            long requestSize,
+            long responseSize) {
+        ShardedBuffer.Shard<Cells> shard = buffer.shard();
+        Cells cells = shard.enter();
+        try {
+            // Look up with the shard's reusable probe keys, so counting a known key allocates nothing
+            RequestKey probe = cells.probe.set(consumer, method.toUpperCase(), path, statusCode);
+            RequestCell cell = cells.map.get(probe);
+            if (cell == null) {
+                RequestKey key = admitKey(probe);
+                if (key != null) {
+                    cell = newCell();
+                    cells.map.put(key, cell);
+                } else {
+                    // Key budget for this interval is exhausted, fold into overflow key
+                    foldedRequestCount.increment();
+                    RequestKey overflowProbe = cells.overflowProbe.set(
+                            OVERFLOW_KEY_PART, probe.method, OVERFLOW_KEY_PART, probe.statusCode);
+                    cell = cells.map.get(overflowProbe);
+                    if (cell == null) {
+                        cell = newCell();
+                        cells.map.put(overflowProbe.copy(), cell);
+                    }
+                }
+            }
+            cell.add(responseTimeNanos, requestSize, responseSize);
+        } finally {
+            shard.exit();
         }
     }
 
-    public List<Requests> getAndResetRequests() {
-        List<Requests> data = new ArrayList<>();
-
-        for (Map.Entry<String, Integer> entry : requestCounts.entrySet()) {
-            String key = entry.getKey();
-            String[] parts = key.split("\\|");
-            String consumer = parts[0].isEmpty() ? null : parts[0];
-            String method = parts[1];
-            String path = parts[2];
-            int statusCode = Integer.parseInt(parts[3]);
-
-            Map<Integer, Integer> responseTimeMap = responseTimes.getOrDefault(key, new ConcurrentHashMap<>());
-            Map<Integer, Integer> requestSizeMap = requestSizes.getOrDefault(key, new ConcurrentHashMap<>());
-            Map<Integer, Integer> responseSizeMap = responseSizes.getOrDefault(key, new ConcurrentHashMap<>());
-
-            Requests item = new Requests(
-                    consumer,
-                    method,
-                    path,
-                    statusCode,
-                    entry.getValue(),
-                    requestSizeSums.getOrDefault(key, 0L),
-                    responseSizeSums.getOrDefault(key, 0L),
-                    responseTimeMap,
-                    requestSizeMap,
-                    responseSizeMap);
-            data.add(item);
-        }
-
-        // Reset all counters
-        requestCounts.clear();
-        requestSizeSums.clear();
-        responseSizeSums.clear();
-        responseTimes.clear();
-        requestSizes.clear();
-        responseSizes.clear();
+    public synchronized List<Requests> getAndResetRequests() {
+        intervalKeys = new IntervalKeys();
+        long intervalStart = intervalStartEpochSecond;
+        intervalStartEpochSecond = System.currentTimeMillis() / 1000;
+
+        Map<RequestKey, RequestCell> merged = new HashMap<>();
+        buffer.drain(cells -> cells.map.forEach((key, cell) -> merged.merge(key, cell, RequestCell::merge)));
+
+        List<Requests> data = new ArrayList<>(merged.size());
+        Map<RequestKey, LatencyHistogram> responseTimes = new HashMap<>(merged.size() * 2);
+        QuantileSketchRollups rollups = quantileSketchRollups;
+        merged.forEach((key, cell) -> {
+            data.add(cell.toRequests(key));
+            responseTimes.put(key, cell.responseTimes);
+            if (rollups != null && cell.responseTimeSketch != null) {
+                rollups.add(intervalStart, key.consumer, key.method, key.path, key.statusCode, cell.responseTimeSketch);
+            }
+        });
+        lastResponseTimes = responseTimes;
+
+        long totalFoldedRequestCount = foldedRequestCount.sum();
+        if (totalFoldedRequestCount > lastFoldedRequestCount) {
+            logger.warn(
+                    "Request counter exceeded budget of {} keys, folded {} requests into overflow keys",
+                    maxKeys,
+                    totalFoldedRequestCount - lastFoldedRequestCount);
+            lastFoldedRequestCount = totalFoldedRequestCount;
+        }
 
         return data;
     }
+
+    /**
+     * Returns the total number of requests that were folded into overflow keys because the key
+     * budget of a sync interval was exceeded.
+     */
+    public long getFoldedRequestCount() {
+        return foldedRequestCount.sum();
+    }
+
+    /**
+     * Enables recording response times into mergeable quantile sketches per key, which are rolled up
+     * at every sync into the hour the sync interval started in. Requests recorded before sketches were enabled are not included.
+     */
+    public void enableQuantileSketches(QuantileSketchRollups rollups) {
+        this.quantileSketchRollups = rollups;
+    }
+
+    /** Returns the hourly response time sketch rollups, or null if quantile sketches are not enabled. */
+    public QuantileSketchRollups getQuantileSketchRollups() {
+        return quantileSketchRollups;
+    }
+
+    /**
+     * Returns a copy of the full-precision response time histogram recorded for the given key in the
+     * last completed sync interval, or null if no requests were recorded for it.
+     */
+    public LatencyHistogram getResponseTimeHistogram(String consumer, String method, String path, int statusCode) {
+        RequestKey key = new RequestKey(consumer, method.toUpperCase(), path, statusCode);
+        LatencyHistogram histogram = lastResponseTimes.get(key);
+        return histogram != null ? histogram.copy() : null;
+    }
+
+    /**
+     * Checks the key against the key budget of the current interval. This is only called when a key
+     * is new to the calling thread's shard, so the shared key set stays off the hot path. Returns a
+     * copy of the probe to store, or null if the key is not admitted. The probe is only copied when
+     * it is admitted, so folding a request into an overflow key allocates nothing once the shard has
+     * a cell for it. A slot of the budget is reserved before a key is added, so no more than {@code
+     * maxKeys} keys are admitted however many threads record concurrently.
+     */
+    private RequestKey admitKey(RequestKey probe) {
+        IntervalKeys interval = intervalKeys;
+        if (interval.keys.containsKey(probe)) {
+            return probe.copy();
+        }
+        if (!interval.reserve(maxKeys)) {
+            // Another thread may have admitted the same key with the last slot
+            return interval.keys.containsKey(probe) ? probe.copy() : null;
+        }
+        RequestKey key = probe.copy();
+        if (interval.keys.putIfAbsent(key, Boolean.TRUE) != null) {
+            // Admitted concurrently by another thread, which took a slot of its own
+            interval.admittedCount.decrementAndGet();
+        }
+        return key;
+    }
+
+    private RequestCell newCell() {
+        QuantileSketchRollups rollups = quantileSketchRollups;
+        return new RequestCell(responseTimePrecisionBits, rollups != null ? rollups.newSketch() : null);
+    }
+
+    /** Keys admitted in a sync interval, and the number of slots of the key budget taken. */
+    private static final class IntervalKeys {
+        private final ConcurrentHashMap<RequestKey, Boolean> keys = new ConcurrentHashMap<>();
+        private final AtomicInteger admittedCount = new AtomicInteger();
+
+        boolean reserve(int maxKeys) {
+            int count;
+            do {
+                count = admittedCount.get();
+                if (count >= maxKeys) {
+                    return false;
+                }
+            } while (!admittedCount.compareAndSet(count, count + 1));
+            return true;
+        }
+    }
+
+    /** Cells of a shard, along with probe keys for allocation-free lookups by the shard's writer. */
+    private static final class Cells {
+        private final Map<RequestKey, RequestCell> map = new HashMap<>();
+        private final RequestKey probe = new RequestKey();
+        private final RequestKey overflowProbe = new RequestKey();
+
+        void clear() {
+            map.clear();
+        }
+    }
+
+    /**
+     * Key of a cell. Keys in maps are never modified, only probe keys are reused through {@link
+     * #set(String, String, String, int)}.
+     */
+    private static final class RequestKey {
+        private String consumer;
+        private String method;
+        private String path;
+        private int statusCode;
+        private int hash;
+
+        RequestKey() {}
+
+        RequestKey(String consumer, String method, String path, int statusCode) {
+            set(consumer, method, path, statusCode);
+        }
+
+        RequestKey set(String consumer, String method, String path, int statusCode) {
+            this.consumer = consumer != null ? consumer : "";
+            this.method = method;
+            this.path = path;
+            this.statusCode = statusCode;
+            this.hash = computeHash();
+            return this;
+        }
+
+        RequestKey copy() {
+            return new RequestKey(consumer, method, path, statusCode);
+        }
+
+        private int computeHash() {
+            int h = consumer.hashCode();
+            h = 31 * h + method.hashCode();
+            h = 31 * h + Objects.hashCode(path);
+            return 31 * h + statusCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey other = (RequestKey) o;
+            return hash == other.hash
+                    && statusCode == other.statusCode
+                    && method.equals(other.method)
+                    && consumer.equals(other.consumer)
+                    && Objects.equals(path, other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class RequestCell {
+        private final LatencyHistogram responseTimes;
+        private final Histogram requestSizes = new Histogram(SIZE_DENSE_BINS);
+        private final Histogram responseSizes = new Histogram(SIZE_DENSE_BINS);
+        private long requestCount;
+        private long requestSizeSum;
+        private long responseSizeSum;
+        private QuantileSketch responseTimeSketch;
+
+        RequestCell(int responseTimePrecisionBits, QuantileSketch responseTimeSketch) {
+            this.responseTimes = new LatencyHistogram(responseTimePrecisionBits);
+            this.responseTimeSketch = responseTimeSketch;
+        }
+
+        void add(long responseTimeNanos, long requestSize, long responseSize) {
+            requestCount++;
+
+            // Add response time (re-binned to 10ms bins at sync time)
+            responseTimes.recordNanos(responseTimeNanos);
+            if (responseTimeSketch != null) {
+                responseTimeSketch.add(responseTimeNanos / 1_000_000.0);
+            }
+
+            // Add request size (rounded down to nearest KB)
+            if (requestSize >= 0) {
+                requestSizeSum += requestSize;
+                requestSizes.add((int) (requestSize / 1000));
+            }
+
+            // Add response size (rounded down to nearest KB)
+            if (responseSize >= 0) {
+                responseSizeSum += responseSize;
+                responseSizes.add((int) (responseSize / 1000));
+            }
+        }
+
+        RequestCell merge(RequestCell other) {
+            requestCount += other.requestCount;
+            requestSizeSum += other.requestSizeSum;
+            responseSizeSum += other.responseSizeSum;
+            responseTimes.merge(other.responseTimes);
+            requestSizes.merge(other.requestSizes);
+            responseSizes.merge(other.responseSizes);
+            if (responseTimeSketch == null) {
+                responseTimeSketch = other.responseTimeSketch;
+            } else if (other.responseTimeSketch != null) {
+                responseTimeSketch.merge(other.responseTimeSketch);
+            }
+            return this;
+        }
+
+        Requests toRequests(RequestKey key) {
+            return new Requests(
+                    key.consumer.isEmpty() ? null : key.consumer,
+                    key.method,
+                    String.valueOf(key.path),
+                    key.statusCode,
+                    (int) requestCount,
+                    requestSizeSum,
+                    responseSizeSum,
+                    responseTimes.toMillisecondBins(RESPONSE_TIME_BIN_WIDTH_MS),
+                    requestSizes.toMap(1),
+                    responseSizes.toMap(1));
+        }
+    }
 }
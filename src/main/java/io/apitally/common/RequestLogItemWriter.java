@@ -0,0 +1,117 @@
+package io.apitally.common;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.apitally.common.dto.ExceptionDto;
+import io.apitally.common.dto.Header;
+import io.apitally.common.dto.LogRecord;
+import io.apitally.common.dto.Request;
+import io.apitally.common.dto.RequestLogItem;
+import io.apitally.common.dto.RequestResponseBase;
+import io.apitally.common.dto.Response;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes request log items as JSON lines, field by field into the given stream. One generator is
+ * reused for all items of a file, so no intermediate trees, strings or byte arrays are created per
+ * item. Empty values of the request and response are omitted.
+ */
+class RequestLogItemWriter implements AutoCloseable {
+    private final JsonGenerator generator;
+
+    RequestLogItemWriter(JsonFactory jsonFactory, OutputStream outputStream) throws IOException {
+        this.generator = jsonFactory.createGenerator(outputStream);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        // Items are separated by line breaks instead
+        this.generator.setRootValueSeparator(null);
+    }
+
+    void write(RequestLogItem item) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("uuid", item.getUuid());
+        generator.writeFieldName("request");
+        writeRequest(item.getRequest());
+        generator.writeFieldName("response");
+        writeResponse(item.getResponse());
+        ExceptionDto exception = item.getException();
+        if (exception != null) {
+            generator.writeObjectFieldStart("exception");
+            generator.writeStringField("type", exception.getType());
+            generator.writeStringField("message", exception.getMessage());
+            generator.writeStringField("stackTrace", exception.getStackTrace());
+            generator.writeEndObject();
+        }
+        List<LogRecord> logs = item.getLogs();
+        if (logs != null && !logs.isEmpty()) {
+            generator.writeArrayFieldStart("logs");
+            for (LogRecord log : logs) {
+                generator.writeStartObject();
+                generator.writeNumberField("timestamp", log.getTimestamp());
+                generator.writeStringField("logger", log.getLogger());
+                generator.writeStringField("level", log.getLevel());
+                generator.writeStringField("message", log.getMessage());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        // Passes the item on to the stream, so the file size is up to date
+        generator.flush();
+    }
+
+    private void writeRequest(Request request) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("timestamp", request.getTimestamp());
+        writeNonEmptyString("consumer", request.getConsumer());
+        writeNonEmptyString("method", request.getMethod());
+        writeNonEmptyString("path", request.getPath());
+        writeNonEmptyString("url", request.getUrl());
+        writeHeadersSizeAndBody(request);
+        generator.writeEndObject();
+    }
+
+    private void writeResponse(Response response) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("statusCode", response.getStatusCode());
+        generator.writeNumberField("responseTime", response.getResponseTime());
+        writeHeadersSizeAndBody(response);
+        generator.writeEndObject();
+    }
+
+    private void writeHeadersSizeAndBody(RequestResponseBase base) throws IOException {
+        Header[] headers = base.getHeaders();
+        if (headers != null && headers.length > 0) {
+            generator.writeArrayFieldStart("headers");
+            for (Header header : headers) {
+                generator.writeStartArray();
+                generator.writeString(header.getName());
+                generator.writeString(header.getValue());
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+        }
+        if (base.getSize() != null) {
+            generator.writeNumberField("size", base.getSize());
+        }
+        byte[] body = base.getBody();
+        if (body != null && body.length > 0) {
+            // Jackson's default Base64 variant matches java.util.Base64's basic encoder
+            generator.writeBinaryField("body", body);
+        }
+    }
+
+    private void writeNonEmptyString(String fieldName, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            generator.writeStringField(fieldName, value);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
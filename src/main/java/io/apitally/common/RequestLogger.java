@@ -1,9 +1,10 @@
 package io.apitally.common;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import io.apitally.common.dto.ExceptionDto;
 import io.apitally.common.dto.Header;
 import io.apitally.common.dto.LogRecord;
 import io.apitally.common.dto.Request;
@@ -16,12 +17,14 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -31,10 +34,10 @@ import org.slf4j.LoggerFactory;
 public class RequestLogger {
     private static final Logger logger = LoggerFactory.getLogger(RequestLogger.class);
 
-    private static final int MAX_BODY_SIZE = 50_000; // 50 KB (uncompressed)
+    public static final int MAX_BODY_SIZE = 50_000; // 50 KB (uncompressed)
     private static final int MAX_FILE_SIZE = 1_000_000; // 1 MB (compressed)
     private static final int MAX_FILES = 50;
-    private static final int MAX_PENDING_WRITES = 100;
+    private static final int WRITE_BATCH_SIZE = 32;
     private static final byte[] BODY_TOO_LARGE = "<body too large>".getBytes(StandardCharsets.UTF_8);
     private static final byte[] BODY_MASKED = "<masked>".getBytes(StandardCharsets.UTF_8);
     private static final String MASKED = "******";
@@ -64,54 +67,72 @@ public class RequestLogger {
             Arrays.asList("auth", "api-?key", "secret", "token", "cookie");
     private static final List<String> MASK_BODY_FIELD_PATTERNS =
             Arrays.asList("password", "pwd", "token", "secret", "auth", "card[-_ ]?number", "ccv", "ssn");
-    private static final int MAINTAIN_INTERVAL_SECONDS = 1;
+    private static final long MAINTAIN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int DECISION_CACHE_SIZE = 1000;
+    private static final byte ROUTE_INCLUDED = 1;
+    private static final byte ROUTE_EXCLUDED = 2;
 
     private final RequestLoggingConfig config;
     private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
     private final ReentrantLock lock;
-    private final Deque<RequestLogItem> pendingWrites;
+    private final BoundedRingBuffer<RequestLogItem> pendingWrites;
+    private final List<RequestLogItem> writeBatch = new ArrayList<>(WRITE_BATCH_SIZE);
+    private final LongAdder droppedOldestCount = new LongAdder();
+    private final LongAdder droppedNewestCount = new LongAdder();
     private final Deque<TempGzipFile> files;
     private TempGzipFile currentFile;
+    private RequestLogItemWriter currentWriter;
     private boolean enabled;
     private Long suspendUntil;
-    private ScheduledExecutorService scheduler;
-    private ScheduledFuture<?> maintainTask;
-
-    private final List<Pattern> compiledPathExcludePatterns;
-    private final List<Pattern> compiledUserAgentExcludePatterns;
-    private final List<Pattern> compiledQueryParamMaskPatterns;
-    private final List<Pattern> compiledHeaderMaskPatterns;
-    private final List<Pattern> compiledBodyFieldMaskPatterns;
+    private final int writerWakeupThreshold;
+    private final AtomicBoolean writerSignalled = new AtomicBoolean();
+    private volatile Thread writerThread;
+    private volatile boolean writerIdle;
+    private volatile boolean writerStopped;
+    private volatile RouteRegistry routeRegistry = RouteRegistry.EMPTY;
+    private volatile byte[] routeExclusions = new byte[0];
+
+    private final PatternMatcher pathExcludeMatcher;
+    private final PatternMatcher userAgentExcludeMatcher;
+    private final PatternMatcher queryParamMaskMatcher;
+    private final PatternMatcher headerMaskMatcher;
+    private final PatternMatcher bodyFieldMaskMatcher;
+    private final KeyFragmentPrefilter bodyFieldPrefilter;
+    private final JsonBodyMasker jsonBodyMasker;
 
     public RequestLogger(RequestLoggingConfig config) {
         this.config = config;
         this.objectMapper = new ObjectMapper();
+        // Writes surrogate pairs as 4-byte UTF-8 sequences, like a string encoded to bytes, not as escapes
+        this.jsonFactory = JsonFactory.builder()
+                .enable(JsonWriteFeature.COMBINE_UNICODE_SURROGATES_IN_UTF8)
+                .build();
         this.lock = new ReentrantLock();
-        this.pendingWrites = new ConcurrentLinkedDeque<>();
+        this.pendingWrites = new BoundedRingBuffer<>(Math.max(1, config.getPendingWritesCapacity()));
+        this.writerWakeupThreshold = Math.max(1, pendingWrites.getCapacity() / 2);
         this.files = new ConcurrentLinkedDeque<>();
         this.enabled = config.isEnabled();
 
-        this.compiledPathExcludePatterns = compilePatterns(EXCLUDE_PATH_PATTERNS, config.getPathExcludePatterns());
-        this.compiledUserAgentExcludePatterns = compilePatterns(EXCLUDE_USER_AGENT_PATTERNS, null);
-        this.compiledQueryParamMaskPatterns =
-                compilePatterns(MASK_QUERY_PARAM_PATTERNS, config.getQueryParamMaskPatterns());
-        this.compiledHeaderMaskPatterns = compilePatterns(MASK_HEADER_PATTERNS, config.getHeaderMaskPatterns());
-        this.compiledBodyFieldMaskPatterns =
-                compilePatterns(MASK_BODY_FIELD_PATTERNS, config.getBodyFieldMaskPatterns());
+        this.pathExcludeMatcher = createMatcher(EXCLUDE_PATH_PATTERNS, config.getPathExcludePatterns());
+        this.userAgentExcludeMatcher = createMatcher(EXCLUDE_USER_AGENT_PATTERNS, null);
+        this.queryParamMaskMatcher = createMatcher(MASK_QUERY_PARAM_PATTERNS, config.getQueryParamMaskPatterns());
+        this.headerMaskMatcher = createMatcher(MASK_HEADER_PATTERNS, config.getHeaderMaskPatterns());
+        this.bodyFieldMaskMatcher = createMatcher(MASK_BODY_FIELD_PATTERNS, config.getBodyFieldMaskPatterns());
+        this.bodyFieldPrefilter = KeyFragmentPrefilter.forPatterns(bodyFieldMaskMatcher.getPatterns());
+        this.jsonBodyMasker = new JsonBodyMasker(jsonFactory, this::shouldMaskBodyField, MASKED);
 
         if (enabled) {
             startMaintenance();
         }
     }
 
-    private static List<Pattern> compilePatterns(List<String> defaultPatterns, List<String> additionalPatterns) {
+    private static PatternMatcher createMatcher(List<String> defaultPatterns, List<String> additionalPatterns) {
         List<String> patterns = new ArrayList<>(defaultPatterns);
         if (additionalPatterns != null) {
             patterns.addAll(additionalPatterns);
         }
-        return patterns.stream()
-                .map(p -> Pattern.compile(p, Pattern.CASE_INSENSITIVE))
-                .collect(Collectors.toList());
+        return new PatternMatcher(patterns, DECISION_CACHE_SIZE);
     }
 
     public RequestLoggingConfig getConfig() {
@@ -122,6 +143,54 @@ public class RequestLogger {
         return enabled;
     }
 
+    /** Sets the routes of the application, so path exclusion decisions can be cached per route. */
+    public void setRouteRegistry(RouteRegistry routeRegistry) {
+        // Assigned before the registry, so readers of the new registry always see a matching cache
+        this.routeExclusions = new byte[routeRegistry.getRouteCount()];
+        this.routeRegistry = routeRegistry;
+    }
+
+    /**
+     * Returns whether requests to the given route are excluded from logging based on their path. The
+     * decision is cached per route ID, see {@link RouteRegistry}.
+     */
+    public boolean isRouteExcluded(int routeId) {
+        RouteRegistry routes = routeRegistry;
+        byte[] exclusions = routeExclusions;
+        if (routeId < 0 || routeId >= exclusions.length) {
+            return false;
+        }
+        byte decision = exclusions[routeId];
+        if (decision == 0) {
+            // Racing threads compute the same decision, so the plain write is benign
+            decision = shouldExcludePath(routes.getPath(routeId)) ? ROUTE_EXCLUDED : ROUTE_INCLUDED;
+            exclusions[routeId] = decision;
+        }
+        return decision == ROUTE_EXCLUDED;
+    }
+
+    /** Returns whether requests with the given path are excluded from logging. */
+    public boolean isPathExcluded(String path) {
+        return shouldExcludePath(path);
+    }
+
+    /**
+     * Returns whether the given request path, without context path, is itself a registered route
+     * pattern of the given method that is excluded from logging. This is checked before dispatch,
+     * when the matched route is not known yet. A literal pattern equal to the request path is the
+     * route the request will be matched to, so the decision is final. A request path that merely
+     * matches an exclusion pattern may be served by a route that isn't excluded, e.g. /users/ping by
+     * /users/{name}.
+     */
+    public boolean isRegisteredRouteExcluded(String method, String path) {
+        int routeId = routeRegistry.getRouteId(method, path);
+        return routeId != RouteRegistry.UNKNOWN && isRouteExcluded(routeId);
+    }
+
+    public boolean isUserAgentExcluded(String userAgent) {
+        return shouldExcludeUserAgent(userAgent);
+    }
+
     public void setSuspendUntil(long timestamp) {
         this.suspendUntil = timestamp;
     }
@@ -134,14 +203,10 @@ public class RequestLogger {
         try {
             String path = request.getPath();
             if (path == null || path.isEmpty()) {
-                try {
-                    path = new URL(request.getUrl()).getPath();
-                } catch (MalformedURLException e) {
-                    path = "";
-                }
+                path = getPathFromUrl(request.getUrl());
             }
             String userAgent = findHeader(request.getHeaders(), "user-agent");
-            if (shouldExcludePath(path) || shouldExcludeUserAgent(userAgent)) {
+            if (shouldExcludePath(request.getMethod(), path) || shouldExcludeUserAgent(userAgent)) {
                 return;
             }
             if (config.getCallbacks() != null && config.getCallbacks().shouldExclude(request, response)) {
@@ -154,21 +219,29 @@ public class RequestLogger {
             if (!config.isResponseBodyIncluded() || !hasSupportedContentType(response.getHeaders())) {
                 response.setBody(null);
             }
-
-            ExceptionDto exceptionDto = null;
-            if (exception != null && config.isExceptionIncluded()) {
-                exceptionDto = new ExceptionDto(exception);
+            if (!config.isExceptionIncluded()) {
+                exception = null;
             }
-
             if (!config.isLogCaptureEnabled() && logs != null) {
                 logs = null;
             }
 
-            RequestLogItem item = new RequestLogItem(request, response, exceptionDto, logs);
-            pendingWrites.add(item);
-
-            if (pendingWrites.size() > MAX_PENDING_WRITES) {
-                pendingWrites.poll();
+            // Exception details, headers and URL are only processed by the background writer
+            RequestLogItem item = RequestLogItem.of(request, response, exception, logs);
+            if (!pendingWrites.offer(item)) {
+                if (config.getOverflowPolicy() == RequestLoggingConfig.OverflowPolicy.DROP_NEWEST) {
+                    droppedNewestCount.increment();
+                } else {
+                    // Other threads may take the freed slot, so drop until this item fits
+                    do {
+                        if (pendingWrites.poll() != null) {
+                            droppedOldestCount.increment();
+                        }
+                    } while (!pendingWrites.offer(item));
+                }
+            }
+            if (writerIdle || pendingWrites.size() >= writerWakeupThreshold) {
+                signalWriter();
             }
         } catch (Exception e) {
             logger.error("Error while logging request", e);
@@ -186,9 +259,7 @@ public class RequestLogger {
                 request.setBody(maskedBody != null ? maskedBody : BODY_MASKED);
             }
 
-            if (request.getBody().length > MAX_BODY_SIZE) {
-                request.setBody(BODY_TOO_LARGE);
-            }
+            request.setBody(limitBodySize(request.getBody(), request.getHeaders()));
 
             // Mask request body fields (if JSON)
             if (!Arrays.equals(request.getBody(), BODY_TOO_LARGE)
@@ -205,9 +276,7 @@ public class RequestLogger {
                 response.setBody(maskedBody != null ? maskedBody : BODY_MASKED);
             }
 
-            if (response.getBody().length > MAX_BODY_SIZE) {
-                response.setBody(BODY_TOO_LARGE);
-            }
+            response.setBody(limitBodySize(response.getBody(), response.getHeaders()));
 
             // Mask response body fields (if JSON)
             if (!Arrays.equals(response.getBody(), BODY_TOO_LARGE)
@@ -249,6 +318,16 @@ public class RequestLogger {
         }
     }
 
+    private byte[] limitBodySize(byte[] body, Header[] headers) {
+        if (body.length <= MAX_BODY_SIZE) {
+            return body;
+        }
+        if (config.isBodyTruncationEnabled() && !hasJsonContentType(headers)) {
+            return Arrays.copyOf(body, MAX_BODY_SIZE);
+        }
+        return BODY_TOO_LARGE;
+    }
+
     public void writeToFile() throws IOException {
         if (!enabled || pendingWrites.isEmpty()) {
             return;
@@ -257,24 +336,17 @@ public class RequestLogger {
         try {
             if (currentFile == null) {
                 currentFile = new TempGzipFile();
+                currentWriter = new RequestLogItemWriter(jsonFactory, currentFile.getContentOutputStream());
             }
-            RequestLogItem item;
-            while ((item = pendingWrites.poll()) != null) {
-                applyMasking(item);
-
-                ObjectNode itemNode = objectMapper.createObjectNode();
-                itemNode.put("uuid", item.getUuid());
-                itemNode.set("request", skipEmptyValues(objectMapper.valueToTree(item.getRequest())));
-                itemNode.set("response", skipEmptyValues(objectMapper.valueToTree(item.getResponse())));
-                if (item.getException() != null) {
-                    itemNode.set("exception", objectMapper.valueToTree(item.getException()));
-                }
-                if (item.getLogs() != null && !item.getLogs().isEmpty()) {
-                    itemNode.set("logs", objectMapper.valueToTree(item.getLogs()));
+            while (pendingWrites.drainTo(writeBatch, WRITE_BATCH_SIZE) > 0) {
+                try {
+                    for (RequestLogItem item : writeBatch) {
+                        applyMasking(item);
+                        currentWriter.write(item);
+                    }
+                } finally {
+                    writeBatch.clear();
                 }
-
-                String serializedItem = objectMapper.writeValueAsString(itemNode);
-                currentFile.writeLine(serializedItem.getBytes(StandardCharsets.UTF_8));
             }
         } finally {
             lock.unlock();
@@ -293,6 +365,12 @@ public class RequestLogger {
         lock.lock();
         try {
             if (currentFile != null) {
+                try {
+                    currentWriter.close();
+                } catch (IOException e) {
+                    logger.error("Error while closing request log file", e);
+                }
+                currentWriter = null;
                 currentFile.close();
                 files.add(currentFile);
                 currentFile = null;
@@ -322,6 +400,30 @@ public class RequestLogger {
         }
     }
 
+    /** Returns the number of logged requests dropped to make room for newer ones. */
+    public long getDroppedOldestCount() {
+        return droppedOldestCount.sum();
+    }
+
+    /** Returns the number of logged requests dropped because the pending writes were full. */
+    public long getDroppedNewestCount() {
+        return droppedNewestCount.sum();
+    }
+
+    /**
+     * Returns the matchers for path and user agent exclusion and for query param, header and body
+     * field masking, keyed by what they decide, e.g. to report the hit and miss counts of their caches.
+     */
+    public Map<String, PatternMatcher> getPatternMatchers() {
+        Map<String, PatternMatcher> matchers = new LinkedHashMap<>();
+        matchers.put("pathExclude", pathExcludeMatcher);
+        matchers.put("userAgentExclude", userAgentExcludeMatcher);
+        matchers.put("queryParamMask", queryParamMaskMatcher);
+        matchers.put("headerMask", headerMaskMatcher);
+        matchers.put("bodyFieldMask", bodyFieldMaskMatcher);
+        return matchers;
+    }
+
     public void clear() {
         pendingWrites.clear();
         rotateFile();
@@ -337,62 +439,110 @@ public class RequestLogger {
         clear();
     }
 
+    /**
+     * Starts the background writer. It maintains the log files once per second while requests are
+     * logged, and is woken up early once the pending writes fill up to half their capacity, so bursts
+     * are drained as they come in. Without pending writes, it parks until the next request is logged.
+     */
     private void startMaintenance() {
-        if (scheduler == null) {
-            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-                Thread thread = new Thread(r, "apitally-request-logger");
-                thread.setDaemon(true);
-                return thread;
-            });
+        writerStopped = false;
+        Thread thread = new Thread(this::runWriter, "apitally-request-logger");
+        thread.setDaemon(true);
+        writerThread = thread;
+        thread.start();
+    }
+
+    private void runWriter() {
+        long nextMaintainNanos = System.nanoTime();
+        while (!writerStopped) {
+            long waitNanos = nextMaintainNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                if (pendingWrites.isEmpty()) {
+                    // Set before checking again, so a request logged in between sees the flag and wakes
+                    // this thread up
+                    writerIdle = true;
+                    if (pendingWrites.isEmpty() && !writerStopped) {
+                        LockSupport.park(this);
+                    }
+                    writerIdle = false;
+                } else if (!writerSignalled.get()) {
+                    LockSupport.parkNanos(this, waitNanos);
+                }
+            }
+            if (writerStopped) {
+                return;
+            }
+            writerSignalled.set(false);
+            long now = System.nanoTime();
+            if (now - nextMaintainNanos >= 0) {
+                nextMaintainNanos = now + MAINTAIN_INTERVAL_NANOS;
+                maintainSafely();
+            } else if (pendingWrites.size() >= writerWakeupThreshold) {
+                try {
+                    writeToFile();
+                } catch (Exception e) {
+                    logger.error("Error while writing request logs", e);
+                }
+            }
+        }
+    }
+
+    private void maintainSafely() {
+        try {
+            maintain();
+        } catch (Exception e) {
+            logger.error("Error while maintaining request logs", e);
+        }
+    }
+
+    private void signalWriter() {
+        Thread thread = writerThread;
+        if (thread != null && !writerSignalled.get() && writerSignalled.compareAndSet(false, true)) {
+            LockSupport.unpark(thread);
         }
-        maintainTask = scheduler.scheduleAtFixedRate(this::maintain, 0, MAINTAIN_INTERVAL_SECONDS, TimeUnit.SECONDS);
     }
 
     private void stopMaintenance() {
-        if (maintainTask != null) {
-            maintainTask.cancel(false);
-            maintainTask = null;
+        Thread thread = writerThread;
+        if (thread == null) {
+            return;
         }
-        if (scheduler != null) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+        writerStopped = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        writerThread = null;
+    }
+
+    private boolean shouldExcludePath(String method, String path) {
+        int routeId = routeRegistry.getRouteId(method, path);
+        return routeId != RouteRegistry.UNKNOWN ? isRouteExcluded(routeId) : shouldExcludePath(path);
     }
 
     private boolean shouldExcludePath(String path) {
         if (path == null || path.isEmpty()) {
             return false;
         }
-        return compiledPathExcludePatterns.stream()
-                .anyMatch(p -> p.matcher(path).find());
+        return pathExcludeMatcher.matches(path);
     }
 
     private boolean shouldExcludeUserAgent(String userAgent) {
-        return userAgent != null
-                && !userAgent.isEmpty()
-                && compiledUserAgentExcludePatterns.stream()
-                        .anyMatch(p -> p.matcher(userAgent).find());
+        return userAgent != null && !userAgent.isEmpty() && userAgentExcludeMatcher.matches(userAgent);
     }
 
     private boolean shouldMaskQueryParam(String name) {
-        return compiledQueryParamMaskPatterns.stream()
-                .anyMatch(p -> p.matcher(name).find());
+        return queryParamMaskMatcher.matches(name);
     }
 
     private boolean shouldMaskHeader(String name) {
-        return compiledHeaderMaskPatterns.stream().anyMatch(p -> p.matcher(name).find());
+        return headerMaskMatcher.matches(name);
     }
 
     private boolean shouldMaskBodyField(String name) {
-        return compiledBodyFieldMaskPatterns.stream()
-                .anyMatch(p -> p.matcher(name).find());
+        return bodyFieldMaskMatcher.matches(name);
     }
 
     private String maskQueryParams(String query) {
@@ -422,6 +572,22 @@ public class RequestLogger {
     }
 
     private byte[] maskJsonBody(byte[] body) {
+        // Bodies without any field that could be masked are logged as they are, without parsing them
+        if (!bodyFieldPrefilter.mayMatch(body)) {
+            return body;
+        }
+        try {
+            byte[] maskedBody = jsonBodyMasker.mask(body);
+            if (maskedBody != null) {
+                return maskedBody;
+            }
+        } catch (Exception e) {
+            // Fall back to the tree, which also handles invalid UTF-8 or returns the original body
+        }
+        return maskJsonBodyTree(body);
+    }
+
+    private byte[] maskJsonBodyTree(byte[] body) {
         try {
             String json = new String(body, StandardCharsets.UTF_8);
             JsonNode node = objectMapper.readTree(json);
@@ -448,8 +614,20 @@ public class RequestLogger {
     }
 
     private boolean hasSupportedContentType(Header[] headers) {
-        String contentType = findHeader(headers, "content-type");
-        return contentType != null && ALLOWED_CONTENT_TYPES.stream().anyMatch(contentType::startsWith);
+        return isSupportedContentType(findHeader(headers, "content-type"));
+    }
+
+    /** Returns whether bodies of the given content type can be logged. */
+    public static boolean isSupportedContentType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        for (int i = 0; i < ALLOWED_CONTENT_TYPES.size(); i++) {
+            if (contentType.startsWith(ALLOWED_CONTENT_TYPES.get(i))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private boolean hasJsonContentType(Header[] headers) {
@@ -458,28 +636,32 @@ public class RequestLogger {
                 && JSON_CONTENT_TYPE_PATTERN.matcher(contentType).find();
     }
 
-    private String findHeader(Header[] headers, String name) {
-        return Arrays.stream(headers)
-                .filter(h -> h.getName().toLowerCase().equals(name))
-                .map(Header::getValue)
-                .findFirst()
-                .orElse(null);
+    private static String findHeader(Header[] headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
     }
 
-    private ObjectNode skipEmptyValues(ObjectNode node) {
-        ObjectNode result = objectMapper.createObjectNode();
-        node.fields().forEachRemaining(entry -> {
-            if (entry.getValue().isNull()) {
-                return;
-            }
-            if (entry.getValue().isArray() && entry.getValue().size() == 0) {
-                return;
-            }
-            if (entry.getValue().isTextual() && entry.getValue().asText().isEmpty()) {
-                return;
-            }
-            result.set(entry.getKey(), entry.getValue());
-        });
-        return result;
+    /** Extracts the path from a URL without parsing it into a {@link URL}. */
+    static String getPathFromUrl(String url) {
+        if (url == null) {
+            return "";
+        }
+        int start = url.indexOf("://");
+        start = start >= 0 ? url.indexOf('/', start + 3) : url.indexOf('/');
+        if (start < 0) {
+            return "";
+        }
+        int end = start;
+        while (end < url.length() && url.charAt(end) != '?' && url.charAt(end) != '#') {
+            end++;
+        }
+        return url.substring(start, end);
     }
 }
@@ -4,6 +4,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class RequestLoggingConfig {
+    /** What to drop when requests are logged faster than the background writer can process them. */
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST
+    }
+
     private boolean enabled = false;
     private boolean queryParamsIncluded = true;
     private boolean requestHeadersIncluded = false;
@@ -12,6 +18,9 @@ public class RequestLoggingConfig {
     private boolean responseBodyIncluded = false;
     private boolean exceptionIncluded = true;
     private boolean logCaptureEnabled = false;
+    private boolean bodyTruncationEnabled = false;
+    private int pendingWritesCapacity = 100;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
     private List<String> queryParamMaskPatterns = new ArrayList<>();
     private List<String> headerMaskPatterns = new ArrayList<>();
     private List<String> bodyFieldMaskPatterns = new ArrayList<>();
@@ -82,6 +91,35 @@ public class RequestLoggingConfig {
         this.logCaptureEnabled = logCaptureEnabled;
     }
 
+    /**
+     * Whether non-JSON bodies larger than the size limit are logged as a truncated prefix instead of
+     * a placeholder. JSON bodies always use the placeholder, as a truncated document can't be masked.
+     */
+    public boolean isBodyTruncationEnabled() {
+        return bodyTruncationEnabled;
+    }
+
+    public void setBodyTruncationEnabled(boolean bodyTruncationEnabled) {
+        this.bodyTruncationEnabled = bodyTruncationEnabled;
+    }
+
+    /** Maximum number of logged requests waiting for the background writer. */
+    public int getPendingWritesCapacity() {
+        return pendingWritesCapacity;
+    }
+
+    public void setPendingWritesCapacity(int pendingWritesCapacity) {
+        this.pendingWritesCapacity = pendingWritesCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
     public List<String> getQueryParamMaskPatterns() {
         return queryParamMaskPatterns;
     }
@@ -0,0 +1,90 @@
+package io.apitally.common;
+
+import io.apitally.common.dto.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable table of the routes of an application, built once at startup. Each method and path
+ * pattern pair is assigned a dense integer ID, so per-route state can be kept in arrays indexed by ID
+ * instead of maps keyed by strings.
+ *
+ * <p>Lookups first go through an identity map on the pattern string, which is a cheap hit when the
+ * framework hands out the same string instance that was registered at startup.
+ */
+public class RouteRegistry {
+    public static final int UNKNOWN = -1;
+    public static final RouteRegistry EMPTY = new RouteRegistry(List.of());
+
+    private final Path[] routes;
+    private final Map<String, Route[]> routesByIdentity = new IdentityHashMap<>();
+    private final Map<String, Route[]> routesByPath = new HashMap<>();
+
+    private static final class Route {
+        private final String method;
+        private final int id;
+
+        private Route(String method, int id) {
+            this.method = method;
+            this.id = id;
+        }
+    }
+
+    /** @param paths method and path pattern pairs, as sent to the Apitally hub at startup */
+    public RouteRegistry(List<Path> paths) {
+        List<Path> uniqueRoutes = new ArrayList<>();
+        for (Path path : paths) {
+            if (path.getPath() == null || getRouteId(path.getMethod(), path.getPath()) != UNKNOWN) {
+                continue;
+            }
+            Route route = new Route(path.getMethod().toUpperCase(), uniqueRoutes.size());
+            uniqueRoutes.add(path);
+            routesByPath.merge(path.getPath(), new Route[] {route}, RouteRegistry::concat);
+            routesByIdentity.merge(path.getPath(), new Route[] {route}, RouteRegistry::concat);
+        }
+        this.routes = uniqueRoutes.toArray(new Path[0]);
+    }
+
+    /** Returns the ID of the given route, or {@link #UNKNOWN} if the route is not registered. */
+    public int getRouteId(String method, String path) {
+        if (path == null || method == null) {
+            return UNKNOWN;
+        }
+        int id = findRoute(routesByIdentity.get(path), method);
+        return id != UNKNOWN ? id : findRoute(routesByPath.get(path), method);
+    }
+
+    public int getRouteCount() {
+        return routes.length;
+    }
+
+    public String getMethod(int routeId) {
+        return routes[routeId].getMethod();
+    }
+
+    /** Returns the path pattern of the given route, always the instance that was registered. */
+    public String getPath(int routeId) {
+        return routes[routeId].getPath();
+    }
+
+    private static int findRoute(Route[] candidates, String method) {
+        if (candidates != null) {
+            for (Route route : candidates) {
+                if (route.method.equalsIgnoreCase(method)) {
+                    return route.id;
+                }
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static Route[] concat(Route[] a, Route[] b) {
+        Route[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -5,18 +5,16 @@ import io.apitally.common.dto.ServerErrors;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class ServerErrorCounter {
-    private final Map<String, Integer> errorCounts;
-    private final Map<String, ServerError> errorDetails;
+    private final ShardedBuffer<Errors> buffer;
 
     public ServerErrorCounter() {
-        this.errorCounts = new ConcurrentHashMap<>();
-        this.errorDetails = new ConcurrentHashMap<>();
+        this.buffer = new ShardedBuffer<>(Errors::new, Errors::clear);
     }
 
     public void addServerError(String consumer, String method, String path, Exception exception) {
@@ -28,14 +26,23 @@ public class ServerErrorCounter {
                 exception.getMessage(),
                 exception.getStackTrace());
         String key = getKey(error);
-        errorDetails.putIfAbsent(key, error);
-        errorCounts.merge(key, 1, Integer::sum);
+        ShardedBuffer.Shard<Errors> shard = buffer.shard();
+        Errors errors = shard.enter();
+        try {
+            errors.errorDetails.putIfAbsent(key, error);
+            errors.errorCounts.merge(key, 1, Integer::sum);
+        } finally {
+            shard.exit();
+        }
     }
 
     public List<ServerErrors> getAndResetServerErrors() {
+        Errors merged = new Errors();
+        buffer.drain(merged::merge);
+
         List<ServerErrors> data = new ArrayList<>();
-        errorCounts.forEach((key, count) -> {
-            ServerError error = errorDetails.get(key);
+        merged.errorCounts.forEach((key, count) -> {
+            ServerError error = merged.errorDetails.get(key);
             if (error != null) {
                 data.add(new ServerErrors(
                         error.getConsumer(),
@@ -47,8 +54,6 @@ public class ServerErrorCounter {
                         count));
             }
         });
-        errorCounts.clear();
-        errorDetails.clear();
         return data;
     }
 
@@ -69,4 +74,19 @@ public class ServerErrorCounter {
             throw new RuntimeException("MD5 algorithm not available", e);
         }
     }
+
+    private static final class Errors {
+        private final Map<String, Integer> errorCounts = new HashMap<>();
+        private final Map<String, ServerError> errorDetails = new HashMap<>();
+
+        private void merge(Errors other) {
+            other.errorCounts.forEach((key, count) -> errorCounts.merge(key, count, Integer::sum));
+            other.errorDetails.forEach(errorDetails::putIfAbsent);
+        }
+
+        private void clear() {
+            errorCounts.clear();
+            errorDetails.clear();
+        }
+    }
 }
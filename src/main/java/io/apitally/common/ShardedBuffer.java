@@ -0,0 +1,183 @@
+package io.apitally.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Per-thread sharded, double-buffered container for counters. Each platform thread records into its
+ * own shard with plain, single-writer updates, so writes cost no CAS operations. The sync thread
+ * swaps the buffers of all shards, waits for in-flight writes to finish and then merges the frozen
+ * buffers. Shards of terminated threads are merged one last time and then dropped.
+ *
+ * <p>Virtual threads are too short-lived for a shard of their own and record into a small set of
+ * shared shards guarded by a lock instead.
+ */
+public class ShardedBuffer<T> {
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    public static final class Shard<T> {
+        private final WeakReference<Thread> owner;
+        private final ReentrantLock lock;
+        private volatile T active;
+        private volatile boolean writing;
+        private T standby;
+
+        private Shard(Thread owner, T active, T standby) {
+            this.owner = owner != null ? new WeakReference<>(owner) : null;
+            this.lock = owner == null ? new ReentrantLock() : null;
+            this.active = active;
+            this.standby = standby;
+        }
+
+        /**
+         * Returns the data to record into. The caller must call {@link #exit()} once it has finished
+         * writing.
+         */
+        public T enter() {
+            if (lock != null) {
+                lock.lock();
+                return active;
+            }
+            // The volatile write is ordered before the read of the active buffer, so the sync thread
+            // either sees this write in progress or this write sees the swapped buffer
+            writing = true;
+            return active;
+        }
+
+        public void exit() {
+            if (lock != null) {
+                lock.unlock();
+            } else {
+                writing = false;
+            }
+        }
+
+        private T swap() {
+            T frozen = active;
+            if (lock != null) {
+                lock.lock();
+                try {
+                    active = standby;
+                } finally {
+                    lock.unlock();
+                }
+                return frozen;
+            }
+
+            active = standby;
+            int spins = 0;
+            while (writing) {
+                if (++spins < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(10_000L);
+                }
+            }
+            return frozen;
+        }
+
+        private boolean isOwnerTerminated() {
+            if (owner == null) {
+                return false;
+            }
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+
+    private final Supplier<T> factory;
+    private final Consumer<T> reset;
+    private final ThreadLocal<Shard<T>> localShard = new ThreadLocal<>();
+    private final Queue<Shard<T>> shards = new ConcurrentLinkedQueue<>();
+    private final List<Shard<T>> sharedShards;
+
+    public ShardedBuffer(Supplier<T> factory, Consumer<T> reset) {
+        this.factory = factory;
+        this.reset = reset;
+        int sharedShardCount =
+                Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        this.sharedShards = new ArrayList<>(sharedShardCount);
+        for (int i = 0; i < sharedShardCount; i++) {
+            Shard<T> shard = new Shard<>(null, factory.get(), factory.get());
+            sharedShards.add(shard);
+            shards.add(shard);
+        }
+    }
+
+    /** Returns the shard the current thread should record into. */
+    public Shard<T> shard() {
+        Thread thread = Thread.currentThread();
+        if (isVirtual(thread)) {
+            long id = thread.getId();
+            int index = (int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16;
+            return sharedShards.get(index & (sharedShards.size() - 1));
+        }
+        Shard<T> shard = localShard.get();
+        if (shard == null) {
+            shard = new Shard<>(thread, factory.get(), factory.get());
+            localShard.set(shard);
+            shards.add(shard);
+        }
+        return shard;
+    }
+
+    /**
+     * Swaps the buffers of all shards and passes the frozen data of each shard to the given merge
+     * function. The data is reset afterwards. Must only be called by one thread at a time.
+     */
+    public synchronized void drain(Consumer<T> merge) {
+        Iterator<Shard<T>> iterator = shards.iterator();
+        while (iterator.hasNext()) {
+            Shard<T> shard = iterator.next();
+            // Check before swapping, so a thread terminating concurrently is drained once more
+            boolean terminated = shard.isOwnerTerminated();
+            T frozen = shard.swap();
+            try {
+                merge.accept(frozen);
+            } finally {
+                reset.accept(frozen);
+                shard.standby = frozen;
+            }
+            if (terminated) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int getShardCount() {
+        return shards.size();
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        // Thread.isVirtual() is only available on Java 21+
+        try {
+            return MethodHandles.publicLookup()
+                    .findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
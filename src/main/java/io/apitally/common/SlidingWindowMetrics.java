@@ -0,0 +1,340 @@
+package io.apitally.common;
+
+import io.apitally.common.dto.EndpointMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Live per-endpoint request metrics over sliding windows, for use by autoscalers and load shedders
+ * in the same process. Each window has a ring of buckets per endpoint: one-second buckets for the
+ * one-minute window and ten-second buckets for the five-minute window. Recording a request is O(1):
+ * it updates the current bucket of each ring with atomic increments. Buckets are allocated once and
+ * reset in place when their ring wraps around.
+ *
+ * <p>Windows only include complete buckets, so the current bucket is not counted until it is over,
+ * and the five-minute window advances in steps of ten seconds. Response time percentiles are
+ * approximate, with a relative error of up to 12.5%.
+ */
+public class SlidingWindowMetrics {
+    public static final int MAX_WINDOW_SECONDS = 300;
+
+    public enum Window {
+        ONE_MINUTE(60, 1),
+        FIVE_MINUTES(300, 10);
+
+        private final int seconds;
+        private final int bucketSeconds;
+
+        Window(int seconds, int bucketSeconds) {
+            this.seconds = seconds;
+            this.bucketSeconds = bucketSeconds;
+        }
+
+        public int getSeconds() {
+            return seconds;
+        }
+
+        public int getBucketSeconds() {
+            return bucketSeconds;
+        }
+    }
+
+    // Log-linear response time bins in microseconds with 4 sub-bins per power of two, up to ~67s
+    private static final int SUB_BIN_BITS = 2;
+    private static final int SUB_BIN_COUNT = 1 << SUB_BIN_BITS;
+    private static final int BIN_COUNT = (26 - SUB_BIN_BITS + 1) * SUB_BIN_COUNT;
+
+    private final Map<EndpointKey, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final ThreadLocal<EndpointKey> probes = ThreadLocal.withInitial(EndpointKey::new);
+    private final LongSupplier clock;
+
+    public SlidingWindowMetrics() {
+        this(() -> System.currentTimeMillis() / 1000);
+    }
+
+    SlidingWindowMetrics(LongSupplier epochSecondClock) {
+        this.clock = epochSecondClock;
+    }
+
+    /** Records a request. Requests without a matched path pattern are ignored. */
+    public void addRequest(String method, String path, int statusCode, long responseTimeNanos) {
+        if (path == null) {
+            return;
+        }
+        // Look up with a reusable probe key, so recording a request of a known endpoint allocates nothing
+        EndpointKey probe = probes.get().set(method.toUpperCase(), path);
+        Endpoint endpoint = endpoints.get(probe);
+        if (endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(new EndpointKey(probe.method, probe.path), Endpoint::new);
+        }
+        endpoint.add(clock.getAsLong(), statusCode, getBin(responseTimeNanos / 1000));
+    }
+
+    /** Returns the metrics of the given endpoint, or null if it received no requests yet. */
+    public EndpointMetrics getMetrics(String method, String path, Window window) {
+        Endpoint endpoint = endpoints.get(new EndpointKey(method.toUpperCase(), path));
+        return endpoint != null ? endpoint.getMetrics(clock.getAsLong(), window) : null;
+    }
+
+    public List<EndpointMetrics> getMetrics(Window window) {
+        long now = clock.getAsLong();
+        List<EndpointMetrics> data = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints.values()) {
+            data.add(endpoint.getMetrics(now, window));
+        }
+        return data;
+    }
+
+    static int getBin(long micros) {
+        if (micros < SUB_BIN_COUNT) {
+            return (int) Math.max(micros, 0);
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(micros)) - SUB_BIN_BITS;
+        int bin = (shift + 1) * SUB_BIN_COUNT + (int) (micros >>> shift) - SUB_BIN_COUNT;
+        return Math.min(bin, BIN_COUNT - 1);
+    }
+
+    static double getBinMidpointMillis(int bin) {
+        if (bin < SUB_BIN_COUNT) {
+            return bin / 1000.0;
+        }
+        int shift = bin / SUB_BIN_COUNT - 1;
+        long lowerBound = (long) (SUB_BIN_COUNT + bin % SUB_BIN_COUNT) << shift;
+        return (lowerBound + (1L << shift) / 2.0) / 1000.0;
+    }
+
+    /** Key of an endpoint. Keys in the map are never modified, only probe keys are reused. */
+    private static final class EndpointKey {
+        private String method;
+        private String path;
+        private int hash;
+
+        EndpointKey() {}
+
+        EndpointKey(String method, String path) {
+            set(method, path);
+        }
+
+        EndpointKey set(String method, String path) {
+            this.method = method;
+            this.path = path;
+            this.hash = 31 * method.hashCode() + path.hashCode();
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EndpointKey)) {
+                return false;
+            }
+            EndpointKey other = (EndpointKey) o;
+            return hash == other.hash && method.equals(other.method) && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Endpoint {
+        private static final Window[] WINDOWS = Window.values();
+
+        private final EndpointKey key;
+        private final Ring[] rings = new Ring[WINDOWS.length];
+
+        Endpoint(EndpointKey key) {
+            this.key = key;
+            for (Window window : WINDOWS) {
+                rings[window.ordinal()] = new Ring(window);
+            }
+        }
+
+        void add(long second, int statusCode, int bin) {
+            for (Ring ring : rings) {
+                ring.add(second, statusCode, bin);
+            }
+        }
+
+        EndpointMetrics getMetrics(long now, Window window) {
+            Ring ring = rings[window.ordinal()];
+            long currentPeriod = Math.floorDiv(now, window.getBucketSeconds());
+            long firstPeriod = currentPeriod - ring.bucketCount;
+            long[] totals = new long[3];
+            long[] responseTimes = new long[BIN_COUNT];
+            long[] bucketTotals = new long[3];
+            long[] bucketResponseTimes = new long[BIN_COUNT];
+            for (int i = 0; i < ring.buckets.length(); i++) {
+                Bucket bucket = ring.buckets.get(i);
+                if (bucket == null) {
+                    continue;
+                }
+                long period = bucket.period;
+                if (period >= currentPeriod || period < firstPeriod) {
+                    continue;
+                }
+                bucket.copyTo(bucketTotals, bucketResponseTimes);
+                if (bucket.period != period) {
+                    // Bucket was reset for a new period while it was read
+                    continue;
+                }
+                for (int j = 0; j < totals.length; j++) {
+                    totals[j] += bucketTotals[j];
+                }
+                for (int bin = 0; bin < BIN_COUNT; bin++) {
+                    responseTimes[bin] += bucketResponseTimes[bin];
+                }
+            }
+            return new EndpointMetrics(
+                    key.method,
+                    key.path,
+                    window.getSeconds(),
+                    totals[0],
+                    totals[1],
+                    totals[2],
+                    getPercentile(responseTimes, 50),
+                    getPercentile(responseTimes, 95),
+                    getPercentile(responseTimes, 99));
+        }
+
+        private static double getPercentile(long[] responseTimes, double percentile) {
+            long total = 0;
+            for (long count : responseTimes) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0.0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                seen += responseTimes[bin];
+                if (seen >= target) {
+                    return getBinMidpointMillis(bin);
+                }
+            }
+            return getBinMidpointMillis(BIN_COUNT - 1);
+        }
+    }
+
+    /** Ring of buckets covering a window, each bucket counting the requests of one period. */
+    private static final class Ring {
+        private final int bucketSeconds;
+        private final int bucketCount;
+        private final AtomicReferenceArray<Bucket> buckets;
+
+        Ring(Window window) {
+            this.bucketSeconds = window.getBucketSeconds();
+            // One more bucket than the window covers, so the current bucket doesn't replace the oldest one
+            this.bucketCount = window.getSeconds() / bucketSeconds;
+            this.buckets = new AtomicReferenceArray<>(bucketCount + 1);
+        }
+
+        void add(long second, int statusCode, int bin) {
+            long period = Math.floorDiv(second, bucketSeconds);
+            int index = (int) Math.floorMod(period, (long) buckets.length());
+            Bucket bucket = buckets.get(index);
+            if (bucket == null) {
+                // Buckets are only allocated on first use, so rarely used endpoints stay small
+                buckets.compareAndSet(index, null, new Bucket(period));
+                bucket = buckets.get(index);
+            }
+            bucket.add(period, statusCode, bin);
+        }
+    }
+
+    private static final class Bucket {
+        private static final long RESETTING = Long.MIN_VALUE;
+        private static final AtomicLongFieldUpdater<Bucket> PERIOD =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "period");
+        private static final AtomicIntegerFieldUpdater<Bucket> WRITERS =
+                AtomicIntegerFieldUpdater.newUpdater(Bucket.class, "writers");
+        private static final AtomicLongFieldUpdater<Bucket> REQUEST_COUNT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "requestCount");
+        private static final AtomicLongFieldUpdater<Bucket> CLIENT_ERROR_COUNT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "clientErrorCount");
+        private static final AtomicLongFieldUpdater<Bucket> SERVER_ERROR_COUNT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "serverErrorCount");
+
+        private final AtomicIntegerArray responseTimes = new AtomicIntegerArray(BIN_COUNT);
+        private volatile long period;
+        // Number of threads counting a request into the current period
+        private volatile int writers;
+        private volatile long requestCount;
+        private volatile long clientErrorCount;
+        private volatile long serverErrorCount;
+
+        Bucket(long period) {
+            this.period = period;
+        }
+
+        /**
+         * Counts a request into the bucket if it holds the given period. If it still holds a previous
+         * round of the ring, the thread that wins the reset waits for writers of that round to finish,
+         * clears the counts and moves the bucket to the period, while other threads wait for it.
+         * Requests of a period the bucket has already moved past are outside of all windows and
+         * dropped.
+         */
+        void add(long period, int statusCode, int bin) {
+            while (true) {
+                long current = this.period;
+                if (current == RESETTING) {
+                    Thread.onSpinWait();
+                } else if (current == period) {
+                    WRITERS.incrementAndGet(this);
+                    try {
+                        // Otherwise a reset started in the meantime, which doesn't wait for this writer
+                        if (this.period == period) {
+                            count(statusCode, bin);
+                            return;
+                        }
+                    } finally {
+                        WRITERS.decrementAndGet(this);
+                    }
+                } else if (current > period) {
+                    return;
+                } else if (PERIOD.compareAndSet(this, current, RESETTING)) {
+                    while (writers != 0) {
+                        Thread.onSpinWait();
+                    }
+                    requestCount = 0;
+                    clientErrorCount = 0;
+                    serverErrorCount = 0;
+                    for (int i = 0; i < BIN_COUNT; i++) {
+                        responseTimes.set(i, 0);
+                    }
+                    this.period = period;
+                }
+            }
+        }
+
+        private void count(int statusCode, int bin) {
+            REQUEST_COUNT.incrementAndGet(this);
+            if (statusCode >= 500) {
+                SERVER_ERROR_COUNT.incrementAndGet(this);
+            } else if (statusCode >= 400) {
+                CLIENT_ERROR_COUNT.incrementAndGet(this);
+            }
+            responseTimes.incrementAndGet(bin);
+        }
+
+        void copyTo(long[] totals, long[] responseTimes) {
+            totals[0] = requestCount;
+            totals[1] = clientErrorCount;
+            totals[2] = serverErrorCount;
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                responseTimes[bin] = this.responseTimes.get(bin);
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -18,6 +19,7 @@ public class TempGzipFile implements AutoCloseable {
     private final Path path;
     private final FileOutputStream fileOutputStream;
     private final GZIPOutputStream gzipOutputStream;
+    private final OutputStream contentOutputStream = new ContentOutputStream();
     private long size = 0;
 
     public TempGzipFile() throws IOException {
@@ -39,6 +41,14 @@ public class TempGzipFile implements AutoCloseable {
         return size;
     }
 
+    /**
+     * Returns a stream to write uncompressed content to, counted towards the {@link #getSize() size}
+     * of the file. Closing the stream doesn't close the file.
+     */
+    public OutputStream getContentOutputStream() {
+        return contentOutputStream;
+    }
+
     public void writeLine(byte[] data) {
         try {
             gzipOutputStream.write(data);
@@ -79,4 +89,18 @@ public class TempGzipFile implements AutoCloseable {
             return reader.lines().collect(Collectors.toList());
         }
     }
+
+    private class ContentOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            gzipOutputStream.write(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            gzipOutputStream.write(b, off, len);
+            size += len;
+        }
+    }
 }
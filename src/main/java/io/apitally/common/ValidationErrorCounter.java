@@ -5,31 +5,38 @@ import io.apitally.common.dto.ValidationErrors;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class ValidationErrorCounter {
-    private final Map<String, Integer> errorCounts;
-    private final Map<String, ValidationError> errorDetails;
+    private final ShardedBuffer<Errors> buffer;
 
     public ValidationErrorCounter() {
-        this.errorCounts = new ConcurrentHashMap<>();
-        this.errorDetails = new ConcurrentHashMap<>();
+        this.buffer = new ShardedBuffer<>(Errors::new, Errors::clear);
     }
 
     public void addValidationError(String consumer, String method, String path, String loc, String msg, String type) {
         ValidationError validationError = new ValidationError(consumer, method, path, loc, msg, type);
         String key = getKey(validationError);
-        errorDetails.putIfAbsent(key, validationError);
-        errorCounts.merge(key, 1, Integer::sum);
+        ShardedBuffer.Shard<Errors> shard = buffer.shard();
+        Errors errors = shard.enter();
+        try {
+            errors.errorDetails.putIfAbsent(key, validationError);
+            errors.errorCounts.merge(key, 1, Integer::sum);
+        } finally {
+            shard.exit();
+        }
     }
 
     public List<ValidationErrors> getAndResetValidationErrors() {
+        Errors merged = new Errors();
+        buffer.drain(merged::merge);
+
         List<ValidationErrors> data = new ArrayList<>();
-        errorCounts.forEach((key, count) -> {
-            ValidationError error = errorDetails.get(key);
+        merged.errorCounts.forEach((key, count) -> {
+            ValidationError error = merged.errorDetails.get(key);
             if (error != null) {
                 data.add(new ValidationErrors(
                         error.getConsumer(),
@@ -41,8 +48,6 @@ public class ValidationErrorCounter {
                         count));
             }
         });
-        errorCounts.clear();
-        errorDetails.clear();
         return data;
     }
 
@@ -63,4 +68,19 @@ public class ValidationErrorCounter {
             throw new RuntimeException("MD5 algorithm not available", e);
         }
     }
+
+    private static final class Errors {
+        private final Map<String, Integer> errorCounts = new HashMap<>();
+        private final Map<String, ValidationError> errorDetails = new HashMap<>();
+
+        private void merge(Errors other) {
+            other.errorCounts.forEach((key, count) -> errorCounts.merge(key, count, Integer::sum));
+            other.errorDetails.forEach(errorDetails::putIfAbsent);
+        }
+
+        private void clear() {
+            errorCounts.clear();
+            errorDetails.clear();
+        }
+    }
 }
@@ -0,0 +1,95 @@
+package io.apitally.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class EndpointMetrics {
+    private final String method;
+    private final String path;
+    private final int windowSeconds;
+    private final long requestCount;
+    private final long clientErrorCount;
+    private final long serverErrorCount;
+    private final double responseTimeP50;
+    private final double responseTimeP95;
+    private final double responseTimeP99;
+
+    public EndpointMetrics(
+            String method,
+            String path,
+            int windowSeconds,
+            long requestCount,
+            long clientErrorCount,
+            long serverErrorCount,
+            double responseTimeP50,
+            double responseTimeP95,
+            double responseTimeP99) {
+        this.method = method;
+        this.path = path;
+        this.windowSeconds = windowSeconds;
+        this.requestCount = requestCount;
+        this.clientErrorCount = clientErrorCount;
+        this.serverErrorCount = serverErrorCount;
+        this.responseTimeP50 = responseTimeP50;
+        this.responseTimeP95 = responseTimeP95;
+        this.responseTimeP99 = responseTimeP99;
+    }
+
+    @JsonProperty("method")
+    public String getMethod() {
+        return method;
+    }
+
+    @JsonProperty("path")
+    public String getPath() {
+        return path;
+    }
+
+    @JsonProperty("window_seconds")
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    @JsonProperty("request_count")
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    @JsonProperty("requests_per_second")
+    public double getRequestsPerSecond() {
+        return (double) requestCount / windowSeconds;
+    }
+
+    @JsonProperty("client_error_count")
+    public long getClientErrorCount() {
+        return clientErrorCount;
+    }
+
+    @JsonProperty("server_error_count")
+    public long getServerErrorCount() {
+        return serverErrorCount;
+    }
+
+    /** Share of requests that failed with a server error (5xx), between 0 and 1. */
+    @JsonProperty("error_rate")
+    public double getErrorRate() {
+        return requestCount > 0 ? (double) serverErrorCount / requestCount : 0.0;
+    }
+
+    /** Median response time in milliseconds. */
+    @JsonProperty("response_time_p50")
+    public double getResponseTimeP50() {
+        return responseTimeP50;
+    }
+
+    /** 95th percentile response time in milliseconds. */
+    @JsonProperty("response_time_p95")
+    public double getResponseTimeP95() {
+        return responseTimeP95;
+    }
+
+    /** 99th percentile response time in milliseconds. */
+    @JsonProperty("response_time_p99")
+    public double getResponseTimeP99() {
+        return responseTimeP99;
+    }
+}
@@ -4,23 +4,45 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 import java.util.UUID;
 
+/**
+ * Request log item as captured on the request thread. The UUID and the exception details are only
+ * rendered when the item is serialized by the background writer.
+ */
 public class RequestLogItem extends BaseDto {
-    private final String uuid;
+    private String uuid;
     private final Request request;
     private final Response response;
-    private final ExceptionDto exception;
+    private final Exception exception;
+    private ExceptionDto exceptionDto;
     private final List<LogRecord> logs;
 
     public RequestLogItem(Request request, Response response, ExceptionDto exception, List<LogRecord> logs) {
-        this.uuid = UUID.randomUUID().toString();
+        this(request, response, null, exception, logs);
+    }
+
+    private RequestLogItem(
+            Request request, Response response, Exception exception, ExceptionDto exceptionDto, List<LogRecord> logs) {
         this.request = request;
         this.response = response;
         this.exception = exception;
+        this.exceptionDto = exceptionDto;
         this.logs = logs;
     }
 
+    /**
+     * Creates an item that renders the exception details only when it is serialized, so formatting
+     * the stack trace stays off the request thread. A factory method rather than a constructor, so
+     * passing a null exception to the constructor stays unambiguous.
+     */
+    public static RequestLogItem of(Request request, Response response, Exception exception, List<LogRecord> logs) {
+        return new RequestLogItem(request, response, exception, null, logs);
+    }
+
     @JsonProperty("uuid")
     public String getUuid() {
+        if (uuid == null) {
+            uuid = UUID.randomUUID().toString();
+        }
         return uuid;
     }
 
@@ -36,7 +58,10 @@ public class RequestLogItem extends BaseDto {
 
     @JsonProperty("exception")
     public ExceptionDto getException() {
-        return exception;
+        if (exceptionDto == null && exception != null) {
+            exceptionDto = new ExceptionDto(exception);
+        }
+        return exceptionDto;
     }
 
     @JsonProperty("logs")
@@ -0,0 +1,84 @@
+package io.apitally.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Map;
+
+public final class ResponseTimeSketch {
+    private final long hour;
+    private final String consumer;
+    private final String method;
+    private final String path;
+    private final int statusCode;
+    private final double relativeAccuracy;
+    private final long count;
+    private final long zeroCount;
+    private final Map<Integer, Long> bins;
+
+    public ResponseTimeSketch(
+            long hour,
+            String consumer,
+            String method,
+            String path,
+            int statusCode,
+            double relativeAccuracy,
+            long count,
+            long zeroCount,
+            Map<Integer, Long> bins) {
+        this.hour = hour;
+        this.consumer = consumer;
+        this.method = method;
+        this.path = path;
+        this.statusCode = statusCode;
+        this.relativeAccuracy = relativeAccuracy;
+        this.count = count;
+        this.zeroCount = zeroCount;
+        this.bins = bins;
+    }
+
+    /** Start of the hour covered by this sketch, in seconds since the epoch. */
+    @JsonProperty("hour")
+    public long getHour() {
+        return hour;
+    }
+
+    @JsonProperty("consumer")
+    public String getConsumer() {
+        return consumer;
+    }
+
+    @JsonProperty("method")
+    public String getMethod() {
+        return method;
+    }
+
+    @JsonProperty("path")
+    public String getPath() {
+        return path;
+    }
+
+    @JsonProperty("status_code")
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    @JsonProperty("relative_accuracy")
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    @JsonProperty("count")
+    public long getCount() {
+        return count;
+    }
+
+    @JsonProperty("zero_count")
+    public long getZeroCount() {
+        return zeroCount;
+    }
+
+    /** Response time counts in milliseconds, keyed by logarithmic bin index. */
+    @JsonProperty("bins")
+    public Map<Integer, Long> getBins() {
+        return bins;
+    }
+}
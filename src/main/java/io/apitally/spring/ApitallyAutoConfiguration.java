@@ -2,9 +2,12 @@ package io.apitally.spring;
 
 import io.apitally.common.ApitallyClient;
 import io.apitally.common.LogAppender;
+import io.apitally.common.QuantileSketchRollups;
+import io.apitally.common.SlidingWindowMetrics;
 import io.apitally.common.dto.Path;
 import java.util.List;
 import java.util.Map;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
@@ -13,16 +16,28 @@ import org.springframework.core.Ordered;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableConfigurationProperties(ApitallyProperties.class)
 public class ApitallyAutoConfiguration {
     @Bean
     public ApitallyClient apitallyClient(
             ApitallyProperties properties, RequestMappingHandlerMapping requestMappingHandlerMapping) {
-        ApitallyClient client =
-                new ApitallyClient(properties.getClientId(), properties.getEnv(), properties.getRequestLogging());
+        ApitallyClient client = new ApitallyClient(
+                properties.getClientId(),
+                properties.getEnv(),
+                properties.getRequestLogging(),
+                properties.getResponseTimePrecisionBits(),
+                properties.getMaxRequestKeys());
         List<Path> paths = ApitallyUtils.getPaths(requestMappingHandlerMapping);
         Map<String, String> versions = ApitallyUtils.getVersions();
         client.setStartupData(paths, versions, "java:spring");
+        client.setRouteRegistry(ApitallyUtils.getRouteRegistry(requestMappingHandlerMapping));
+        if (properties.isQuantileSketchesEnabled()) {
+            client.requestCounter.enableQuantileSketches(new QuantileSketchRollups());
+        }
+        if (properties.isSlidingWindowMetricsEnabled()) {
+            client.enableSlidingWindowMetrics(new SlidingWindowMetrics());
+        }
         client.startSync();
 
         if (properties.getRequestLogging().isEnabled()
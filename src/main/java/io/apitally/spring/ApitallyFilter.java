@@ -5,23 +5,26 @@ import io.apitally.common.ConsumerRegistry;
 import io.apitally.common.LogAppender;
 import io.apitally.common.RequestLogger;
 import io.apitally.common.RequestLoggingConfig;
+import io.apitally.common.RouteRegistry;
+import io.apitally.common.SlidingWindowMetrics;
 import io.apitally.common.dto.Consumer;
 import io.apitally.common.dto.Header;
 import io.apitally.common.dto.LogRecord;
 import io.apitally.common.dto.Request;
 import io.apitally.common.dto.Response;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.ServletOutputStream;
-import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.HttpServletResponseWrapper;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.NonNull;
@@ -29,13 +32,18 @@ import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.servlet.HandlerMapping;
-import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 
 public class ApitallyFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(ApitallyFilter.class);
+    private static final String[] REQUIRED_REQUEST_HEADERS = {"user-agent", "content-type"};
+    private static final String[] REQUIRED_RESPONSE_HEADERS = {"content-type"};
 
     private final ApitallyClient client;
+    // Completions and their counting wrappers are reused by the thread that handled the previous
+    // request, so requests without request logging don't allocate in this filter
+    private final ThreadLocal<RequestCompletion> pooledCompletion = new ThreadLocal<>();
+    // Derived from the filter name, which is only known once the filter is initialized
+    private volatile String alreadyFilteredAttributeName;
 
     public ApitallyFilter(ApitallyClient client) {
         this.client = client;
@@ -53,26 +61,47 @@ public class ApitallyFilter extends OncePerRequestFilter {
         }
 
         RequestLoggingConfig requestLoggingConfig = client.requestLogger.getConfig();
-        final boolean requestLoggingEnabled = requestLoggingConfig.isEnabled();
 
-        String requestContentType = request.getContentType();
+        // Decide on exclusion before installing any capture wrappers, so excluded traffic like health
+        // checks skips all body and log capture. Only decisions that the matched route can't change
+        // are made here, all others once the request is complete.
+        final boolean excludedByUserAgent = requestLoggingConfig.isEnabled()
+                && client.requestLogger.isUserAgentExcluded(request.getHeader("user-agent"));
+        final boolean excludedByRoute = requestLoggingConfig.isEnabled()
+                && !excludedByUserAgent
+                && client.requestLogger.isRegisteredRouteExcluded(
+                        request.getMethod(), getPathWithinApplication(request));
+        final boolean requestLoggingEnabled =
+                requestLoggingConfig.isEnabled() && !excludedByUserAgent && !excludedByRoute;
+
         final boolean shouldCacheRequest = requestLoggingEnabled
                 && requestLoggingConfig.isRequestBodyIncluded()
-                && requestContentType != null
-                && RequestLogger.ALLOWED_CONTENT_TYPES.stream()
-                        .anyMatch(allowedContentType -> requestContentType.startsWith(allowedContentType));
+                && RequestLogger.isSupportedContentType(request.getContentType());
+        // Whether the response body is actually captured is decided by the wrapper, once the content
+        // type is known
         final boolean shouldCacheResponse = requestLoggingEnabled && requestLoggingConfig.isResponseBodyIncluded();
-        ContentCachingRequestWrapper cachingRequest =
-                shouldCacheRequest ? new ContentCachingRequestWrapper(request) : null;
-        ContentCachingResponseWrapper cachingResponse =
-                shouldCacheResponse ? new ContentCachingResponseWrapper(response) : null;
-        CountingResponseWrapper countingResponse =
-                cachingResponse == null ? new CountingResponseWrapper(response) : null;
-
         final boolean shouldCaptureLogs = requestLoggingEnabled && requestLoggingConfig.isLogCaptureEnabled();
 
-        Exception exception = null;
-        final long startTime = System.currentTimeMillis();
+        final RequestCompletion completion = acquireCompletion(request, response);
+        CapturingRequestWrapper capturingRequest =
+                shouldCacheRequest ? new CapturingRequestWrapper(request, RequestLogger.MAX_BODY_SIZE) : null;
+        // Without a Content-Length header (chunked uploads), count the bytes the application reads
+        CountingRequestWrapper countingRequest = capturingRequest == null && request.getContentLengthLong() < 0
+                ? completion.countingRequestFor(request)
+                : null;
+        CapturingResponseWrapper capturingResponse =
+                shouldCacheResponse ? new CapturingResponseWrapper(response, RequestLogger.MAX_BODY_SIZE) : null;
+        CountingResponseWrapper countingResponse =
+                capturingResponse == null ? completion.countingResponseFor(response) : null;
+        completion.start(
+                request,
+                response,
+                capturingRequest,
+                countingRequest,
+                capturingResponse,
+                countingResponse,
+                excludedByUserAgent,
+                excludedByRoute);
 
         if (shouldCaptureLogs) {
             LogAppender.startCapture();
@@ -80,27 +109,171 @@ public class ApitallyFilter extends OncePerRequestFilter {
 
         try {
             filterChain.doFilter(
-                    cachingRequest != null ? cachingRequest : request,
-                    cachingResponse != null ? cachingResponse : countingResponse);
+                    capturingRequest != null ? capturingRequest : countingRequest != null ? countingRequest : request,
+                    capturingResponse != null ? capturingResponse : countingResponse);
         } catch (Exception e) {
-            exception = e;
+            completion.exception = e;
             throw e;
         } finally {
+            // Log capture is bound to the current thread, so it ends with the initial dispatch
+            if (shouldCaptureLogs) {
+                completion.capturedLogs = LogAppender.endCapture();
+            }
+            if (completion.exception == null && request.isAsyncStarted()) {
+                // The response is written after the initial dispatch returns, so complete once the
+                // async request is done. Async dispatches are not filtered again. The completion now
+                // belongs to the async request and can't be reused by this thread.
+                pooledCompletion.remove();
+                request.getAsyncContext().addListener(completion);
+            } else {
+                completion.complete();
+                completion.release();
+            }
+        }
+    }
+
+    @Override
+    protected void initFilterBean() {
+        alreadyFilteredAttributeName = null;
+    }
+
+    @Override
+    protected String getAlreadyFilteredAttributeName() {
+        String name = alreadyFilteredAttributeName;
+        if (name == null) {
+            name = super.getAlreadyFilteredAttributeName();
+            alreadyFilteredAttributeName = name;
+        }
+        return name;
+    }
+
+    private RequestCompletion acquireCompletion(HttpServletRequest request, HttpServletResponse response) {
+        RequestCompletion completion = pooledCompletion.get();
+        if (completion == null || completion.inUse) {
+            completion = new RequestCompletion(request, response);
+            pooledCompletion.set(completion);
+        }
+        completion.inUse = true;
+        return completion;
+    }
+
+    /**
+     * Records a request in the counters and the request log once its response is complete. For
+     * async requests, this happens in {@link #onComplete(AsyncEvent)}, which the container calls
+     * after any timeout or error handling, so the final status code is recorded. Completions of
+     * synchronous requests are {@link #release() released} and reused for the next request on the
+     * same thread.
+     */
+    private class RequestCompletion implements AsyncListener {
+        private final CountingRequestWrapper reusableCountingRequest;
+        private final CountingResponseWrapper reusableCountingResponse;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private boolean inUse;
+        private HttpServletRequest request;
+        private HttpServletResponse response;
+        private CapturingRequestWrapper capturingRequest;
+        private CountingRequestWrapper countingRequest;
+        private CapturingResponseWrapper capturingResponse;
+        private CountingResponseWrapper countingResponse;
+        private boolean excludedByUserAgent;
+        private boolean excludedByRoute;
+        private long startTime;
+        private long startNanos;
+        private volatile Exception exception;
+        private volatile List<LogRecord> capturedLogs;
+
+        RequestCompletion(HttpServletRequest request, HttpServletResponse response) {
+            this.reusableCountingRequest = new CountingRequestWrapper(request);
+            this.reusableCountingResponse = new CountingResponseWrapper(response);
+        }
+
+        CountingRequestWrapper countingRequestFor(HttpServletRequest request) {
+            reusableCountingRequest.reset(request);
+            return reusableCountingRequest;
+        }
+
+        CountingResponseWrapper countingResponseFor(HttpServletResponse response) {
+            reusableCountingResponse.reset(response);
+            return reusableCountingResponse;
+        }
+
+        void start(
+                HttpServletRequest request,
+                HttpServletResponse response,
+                CapturingRequestWrapper capturingRequest,
+                CountingRequestWrapper countingRequest,
+                CapturingResponseWrapper capturingResponse,
+                CountingResponseWrapper countingResponse,
+                boolean excludedByUserAgent,
+                boolean excludedByRoute) {
+            this.request = request;
+            this.response = response;
+            this.capturingRequest = capturingRequest;
+            this.countingRequest = countingRequest;
+            this.capturingResponse = capturingResponse;
+            this.countingResponse = countingResponse;
+            this.excludedByUserAgent = excludedByUserAgent;
+            this.excludedByRoute = excludedByRoute;
+            this.startTime = System.currentTimeMillis();
+            this.startNanos = System.nanoTime();
+            this.exception = null;
+            this.capturedLogs = null;
+            this.completed.set(false);
+        }
+
+        /**
+         * Drops the references to the completed request, so it can be reused for the next one and
+         * the request isn't kept alive by the thread in the meantime.
+         */
+        void release() {
+            reusableCountingRequest.release();
+            reusableCountingResponse.release();
+            request = null;
+            response = null;
+            capturingRequest = null;
+            countingRequest = null;
+            capturingResponse = null;
+            countingResponse = null;
+            exception = null;
+            capturedLogs = null;
+            inUse = false;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            complete();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // Completed in onComplete, after the timeout response was written
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            if (exception == null && event.getThrowable() instanceof Exception e) {
+                exception = e;
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Async processing restarted, keep listening for the completion
+            event.getAsyncContext().addListener(this);
+        }
+
+        void complete() {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
             try {
-                final long responseTimeInMillis = System.currentTimeMillis() - startTime;
-                final String path = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
-
-                // End log capture and get logs
-                final List<LogRecord> capturedLogs = shouldCaptureLogs ? LogAppender.endCapture() : null;
-
-                // Get request and response body
-                final byte[] requestBody =
-                        cachingRequest != null ? cachingRequest.getContentAsByteArray() : new byte[0];
-                final byte[] responseBody =
-                        cachingResponse != null ? cachingResponse.getContentAsByteArray() : new byte[0];
-                if (cachingResponse != null) {
-                    cachingResponse.copyBodyToResponse();
-                }
+                final long responseTimeInNanos = System.nanoTime() - startNanos;
+                final String pattern = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+                // Resolve route once, so the registered pattern instance is used from here on
+                final RouteRegistry routes = client.getRouteRegistry();
+                final int routeId = routes.getRouteId(request.getMethod(), pattern);
+                final String path = routeId != RouteRegistry.UNKNOWN ? routes.getPath(routeId) : pattern;
 
                 // Register consumer and get consumer identifier
                 final Consumer consumer = ConsumerRegistry.consumerFromObject(request.getAttribute("apitallyConsumer"));
@@ -108,6 +281,7 @@ public class ApitallyFilter extends OncePerRequestFilter {
                 final String consumerIdentifier = consumer != null ? consumer.getIdentifier() : "";
 
                 // Get captured exception
+                Exception exception = this.exception;
                 Object capturedException = request.getAttribute("apitallyCapturedException");
                 if (exception == null && capturedException != null && capturedException instanceof Exception) {
                     exception = (Exception) capturedException;
@@ -117,31 +291,51 @@ public class ApitallyFilter extends OncePerRequestFilter {
                 final long requestContentLength = request.getContentLengthLong();
                 final long requestSize = requestContentLength >= 0
                         ? requestContentLength
-                        : cachingRequest != null ? requestBody.length : -1;
-                final long responseContentLength = getResponseContentLength(response);
+                        : capturingRequest != null
+                                ? capturingRequest.getByteCount()
+                                : countingRequest != null ? countingRequest.getByteCount() : -1;
+                // Counted bytes match the Content-Length header whenever a body was written, and reading
+                // them avoids materializing the header value
+                final long countedResponseSize = countingResponse != null ? countingResponse.getByteCount() : 0;
+                final long responseContentLength =
+                        countedResponseSize > 0 ? countedResponseSize : getResponseContentLength(response);
                 final long responseSize = responseContentLength >= 0
                         ? responseContentLength
-                        : cachingResponse != null
-                                ? responseBody.length
+                        : capturingResponse != null
+                                ? capturingResponse.getByteCount()
                                 : countingResponse != null ? countingResponse.getByteCount() : -1;
-                client.requestCounter.addRequest(
+                client.requestCounter.addRequestNanos(
                         consumerIdentifier,
                         request.getMethod(),
                         path,
                         response.getStatus(),
-                        responseTimeInMillis,
+                        responseTimeInNanos,
                         requestSize,
                         responseSize);
+                final SlidingWindowMetrics slidingWindowMetrics = client.getSlidingWindowMetrics();
+                if (slidingWindowMetrics != null) {
+                    slidingWindowMetrics.addRequest(
+                            request.getMethod(), path, response.getStatus(), responseTimeInNanos);
+                }
 
                 // Log request
-                if (client.requestLogger.isEnabled()) {
-                    final Header[] requestHeaders = Collections.list(request.getHeaderNames()).stream()
-                            .flatMap(name -> Collections.list(request.getHeaders(name)).stream()
-                                    .map(value -> new Header(name, value)))
-                            .toArray(Header[]::new);
-                    final Header[] responseHeaders = response.getHeaderNames().stream()
-                            .flatMap(name -> response.getHeaders(name).stream().map(value -> new Header(name, value)))
-                            .toArray(Header[]::new);
+                final boolean excludedPath = excludedByRoute
+                        || (routeId != RouteRegistry.UNKNOWN
+                                ? client.requestLogger.isRouteExcluded(routeId)
+                                : client.requestLogger.isPathExcluded(
+                                        pattern != null ? pattern : request.getRequestURI()));
+                if (client.requestLogger.isEnabled() && !excludedByUserAgent && !excludedPath) {
+                    final RequestLoggingConfig requestLoggingConfig = client.requestLogger.getConfig();
+                    // Callbacks may inspect any header, otherwise only capture what is needed
+                    final boolean hasCallbacks = requestLoggingConfig.getCallbacks() != null;
+                    final Header[] requestHeaders =
+                            getRequestHeaders(request, requestLoggingConfig.isRequestHeadersIncluded() || hasCallbacks);
+                    final Header[] responseHeaders = getResponseHeaders(
+                            response, requestLoggingConfig.isResponseHeadersIncluded() || hasCallbacks);
+                    final byte[] requestBody =
+                            capturingRequest != null ? capturingRequest.getCapturedBody() : new byte[0];
+                    final byte[] responseBody =
+                            capturingResponse != null ? capturingResponse.getCapturedBody() : new byte[0];
 
                     client.requestLogger.logRequest(
                             new Request(
@@ -155,7 +349,7 @@ public class ApitallyFilter extends OncePerRequestFilter {
                                     requestBody),
                             new Response(
                                     response.getStatus(),
-                                    responseTimeInMillis / 1000.0,
+                                    responseTimeInNanos / 1_000_000_000.0,
                                     responseHeaders,
                                     responseSize,
                                     responseBody),
@@ -202,94 +396,61 @@ public class ApitallyFilter extends OncePerRequestFilter {
         }
     }
 
-    private static long getResponseContentLength(HttpServletResponse response) {
-        String contentLength = response.getHeader("content-length");
-        if (contentLength != null) {
-            try {
-                return Long.parseLong(contentLength);
-            } catch (NumberFormatException e) {
+    private static Header[] getRequestHeaders(HttpServletRequest request, boolean allHeaders) {
+        List<Header> headers = new ArrayList<>();
+        if (allHeaders) {
+            Enumeration<String> names = request.getHeaderNames();
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                Enumeration<String> values = request.getHeaders(name);
+                while (values.hasMoreElements()) {
+                    headers.add(new Header(name, values.nextElement()));
+                }
+            }
+        } else {
+            for (String name : REQUIRED_REQUEST_HEADERS) {
+                String value = request.getHeader(name);
+                if (value != null) {
+                    headers.add(new Header(name, value));
+                }
             }
         }
-        return -1L;
+        return headers.toArray(new Header[0]);
     }
 
-    private static class CountingResponseWrapper extends HttpServletResponseWrapper {
-        private CountingServletOutputStream countingStream;
-
-        public CountingResponseWrapper(HttpServletResponse response) {
-            super(response);
-        }
-
-        @Override
-        public ServletOutputStream getOutputStream() throws IOException {
-            if (countingStream == null) {
-                countingStream = new CountingServletOutputStream(super.getOutputStream());
+    private static Header[] getResponseHeaders(HttpServletResponse response, boolean allHeaders) {
+        List<Header> headers = new ArrayList<>();
+        if (allHeaders) {
+            for (String name : response.getHeaderNames()) {
+                for (String value : response.getHeaders(name)) {
+                    headers.add(new Header(name, value));
+                }
             }
-            return countingStream;
-        }
-
-        @Override
-        public void flushBuffer() throws IOException {
-            if (countingStream != null) {
-                countingStream.flush();
+        } else {
+            for (String name : REQUIRED_RESPONSE_HEADERS) {
+                String value = response.getHeader(name);
+                if (value != null) {
+                    headers.add(new Header(name, value));
+                }
             }
-            super.flushBuffer();
-        }
-
-        public long getByteCount() {
-            return countingStream != null ? countingStream.getByteCount() : 0;
         }
+        return headers.toArray(new Header[0]);
     }
 
-    private static class CountingServletOutputStream extends ServletOutputStream {
-        private final ServletOutputStream outputStream;
-        private long byteCount;
-
-        public CountingServletOutputStream(ServletOutputStream outputStream) {
-            this.outputStream = outputStream;
-            this.byteCount = 0;
-        }
-
-        @Override
-        public boolean isReady() {
-            return outputStream.isReady();
-        }
-
-        @Override
-        public void setWriteListener(WriteListener writeListener) {
-            outputStream.setWriteListener(writeListener);
-        }
-
-        @Override
-        public void write(int b) throws IOException {
-            outputStream.write(b);
-            byteCount++;
-        }
-
-        @Override
-        public void write(byte[] b) throws IOException {
-            outputStream.write(b);
-            byteCount += b.length;
-        }
-
-        @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            outputStream.write(b, off, len);
-            byteCount += len;
-        }
-
-        @Override
-        public void flush() throws IOException {
-            outputStream.flush();
-        }
-
-        @Override
-        public void close() throws IOException {
-            outputStream.close();
-        }
+    private static String getPathWithinApplication(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        return contextPath.isEmpty() || !uri.startsWith(contextPath) ? uri : uri.substring(contextPath.length());
+    }
 
-        public long getByteCount() {
-            return byteCount;
+    private static long getResponseContentLength(HttpServletResponse response) {
+        String contentLength = response.getHeader("content-length");
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+            }
         }
+        return -1L;
     }
 }
@@ -1,6 +1,10 @@
 package io.apitally.spring;
 
+import io.apitally.common.LatencyHistogram;
+import io.apitally.common.RequestCounter;
 import io.apitally.common.RequestLoggingCallbacks;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import org.slf4j.Logger;
@@ -24,6 +28,12 @@ public class ApitallyProperties {
     private String env = "default";
 
     private RequestLoggingConfig requestLogging = new RequestLoggingConfig();
+    private boolean quantileSketchesEnabled = false;
+    private boolean slidingWindowMetricsEnabled = false;
+
+    @Min(value = 1, message = "Response time precision bits must be at least 1") @Max(value = 10, message = "Response time precision bits must be at most 10") private int responseTimePrecisionBits = LatencyHistogram.DEFAULT_PRECISION_BITS;
+
+    @Min(value = 1, message = "Max request keys must be at least 1") private int maxRequestKeys = RequestCounter.DEFAULT_MAX_KEYS;
 
     public String getClientId() {
         return clientId;
@@ -49,6 +59,38 @@ public class ApitallyProperties {
         this.requestLogging = requestLogging;
     }
 
+    public boolean isQuantileSketchesEnabled() {
+        return quantileSketchesEnabled;
+    }
+
+    public void setQuantileSketchesEnabled(boolean quantileSketchesEnabled) {
+        this.quantileSketchesEnabled = quantileSketchesEnabled;
+    }
+
+    public boolean isSlidingWindowMetricsEnabled() {
+        return slidingWindowMetricsEnabled;
+    }
+
+    public void setSlidingWindowMetricsEnabled(boolean slidingWindowMetricsEnabled) {
+        this.slidingWindowMetricsEnabled = slidingWindowMetricsEnabled;
+    }
+
+    public int getResponseTimePrecisionBits() {
+        return responseTimePrecisionBits;
+    }
+
+    public void setResponseTimePrecisionBits(int responseTimePrecisionBits) {
+        this.responseTimePrecisionBits = responseTimePrecisionBits;
+    }
+
+    public int getMaxRequestKeys() {
+        return maxRequestKeys;
+    }
+
+    public void setMaxRequestKeys(int maxRequestKeys) {
+        this.maxRequestKeys = maxRequestKeys;
+    }
+
     public static class RequestLoggingConfig extends io.apitally.common.RequestLoggingConfig {
         @Pattern(regexp = "^[\\w.]+$", message = "Callbacks class must be a valid class name") private String callbacksClass;
 
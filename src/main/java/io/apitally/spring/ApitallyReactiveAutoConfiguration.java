@@ -0,0 +1,49 @@
+package io.apitally.spring;
+
+import io.apitally.common.ApitallyClient;
+import io.apitally.common.QuantileSketchRollups;
+import io.apitally.common.SlidingWindowMetrics;
+import io.apitally.common.dto.Path;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.reactive.error.ErrorAttributes;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableConfigurationProperties(ApitallyProperties.class)
+public class ApitallyReactiveAutoConfiguration {
+    @Bean
+    public ApitallyClient apitallyClient(
+            ApitallyProperties properties, RequestMappingHandlerMapping requestMappingHandlerMapping) {
+        ApitallyClient client = new ApitallyClient(
+                properties.getClientId(),
+                properties.getEnv(),
+                properties.getRequestLogging(),
+                properties.getResponseTimePrecisionBits(),
+                properties.getMaxRequestKeys());
+        List<Path> paths = ApitallyReactiveUtils.getPaths(requestMappingHandlerMapping);
+        Map<String, String> versions = ApitallyUtils.getVersions();
+        client.setStartupData(paths, versions, "java:spring");
+        client.setRouteRegistry(ApitallyReactiveUtils.getRouteRegistry(requestMappingHandlerMapping));
+        if (properties.isQuantileSketchesEnabled()) {
+            client.requestCounter.enableQuantileSketches(new QuantileSketchRollups());
+        }
+        if (properties.isSlidingWindowMetricsEnabled()) {
+            client.enableSlidingWindowMetrics(new SlidingWindowMetrics());
+        }
+        client.startSync();
+        return client;
+    }
+
+    @Bean
+    public ApitallyWebFilter apitallyWebFilter(
+            ApitallyClient apitallyClient, ObjectProvider<ErrorAttributes> errorAttributes) {
+        return new ApitallyWebFilter(apitallyClient, errorAttributes.getIfAvailable());
+    }
+}
@@ -0,0 +1,32 @@
+package io.apitally.spring;
+
+import io.apitally.common.RouteRegistry;
+import io.apitally.common.dto.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.reactive.result.condition.PatternsRequestCondition;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * Counterpart of {@link ApitallyUtils} for Spring WebFlux, kept separate so neither depends on the
+ * other web stack being on the classpath.
+ */
+public final class ApitallyReactiveUtils {
+    public static List<Path> getPaths(RequestMappingHandlerMapping requestMappingHandlerMapping) {
+        return requestMappingHandlerMapping.getHandlerMethods().keySet().stream()
+                .flatMap(mappingInfo -> {
+                    PatternsRequestCondition patterns = mappingInfo.getPatternsCondition();
+                    return mappingInfo.getMethodsCondition().getMethods().stream()
+                            .filter(method -> method != RequestMethod.OPTIONS && method != RequestMethod.HEAD)
+                            .flatMap(method -> patterns.getPatterns().stream()
+                                    .map(pattern -> new Path(method.name(), pattern.getPatternString())));
+                })
+                .collect(Collectors.toList());
+    }
+
+    /** Builds the route registry from the same routes as {@link #getPaths}. */
+    public static RouteRegistry getRouteRegistry(RequestMappingHandlerMapping requestMappingHandlerMapping) {
+        return new RouteRegistry(getPaths(requestMappingHandlerMapping));
+    }
+}
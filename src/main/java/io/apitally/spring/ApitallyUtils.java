@@ -1,5 +1,6 @@
 package io.apitally.spring;
 
+import io.apitally.common.RouteRegistry;
 import io.apitally.common.dto.Path;
 import java.util.List;
 import java.util.Map;
@@ -36,6 +37,11 @@ public final class ApitallyUtils {
                 .collect(Collectors.toList());
     }
 
+    /** Builds the route registry from the same routes as {@link #getPaths}. */
+    public static RouteRegistry getRouteRegistry(RequestMappingHandlerMapping requestMappingHandlerMapping) {
+        return new RouteRegistry(getPaths(requestMappingHandlerMapping));
+    }
+
     public static Map<String, String> getVersions() {
         return Map.of(
                 "java", System.getProperty("java.version"),
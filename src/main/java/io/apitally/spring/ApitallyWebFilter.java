@@ -0,0 +1,482 @@
+package io.apitally.spring;
+
+import io.apitally.common.ApitallyClient;
+import io.apitally.common.ConsumerRegistry;
+import io.apitally.common.RequestLogger;
+import io.apitally.common.RequestLoggingConfig;
+import io.apitally.common.RouteRegistry;
+import io.apitally.common.SlidingWindowMetrics;
+import io.apitally.common.dto.Consumer;
+import io.apitally.common.dto.Header;
+import io.apitally.common.dto.Request;
+import io.apitally.common.dto.Response;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.reactive.error.ErrorAttributes;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Captures requests and responses of Spring WebFlux applications, like {@link ApitallyFilter} does
+ * for servlet applications. Bodies are observed as their data buffers stream through, keeping only
+ * a bounded prefix, and the request is recorded when the exchange completes, without blocking.
+ *
+ * <p>Application logs are not captured, as log capture is bound to a thread and reactive requests
+ * hop between threads.
+ *
+ * <p>Exceptions that {@code @ExceptionHandler} methods turn into a response don't reach web filters,
+ * and WebFlux doesn't keep them on the exchange. For server errors, the filter picks them up from
+ * {@link ErrorAttributes}, where Spring Boot's error handling stores them and where exception
+ * handlers can store them with {@link ErrorAttributes#storeErrorInformation}.
+ */
+public class ApitallyWebFilter implements WebFilter, Ordered {
+    private static final Logger logger = LoggerFactory.getLogger(ApitallyWebFilter.class);
+    private static final String[] REQUIRED_REQUEST_HEADERS = {"user-agent", "content-type"};
+    private static final String[] REQUIRED_RESPONSE_HEADERS = {"content-type"};
+
+    private final ApitallyClient client;
+    private final ErrorAttributes errorAttributes;
+
+    public ApitallyWebFilter(ApitallyClient client) {
+        this(client, null);
+    }
+
+    public ApitallyWebFilter(ApitallyClient client, ErrorAttributes errorAttributes) {
+        this.client = client;
+        this.errorAttributes = errorAttributes;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 10;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!client.isEnabled() || HttpMethod.OPTIONS.equals(request.getMethod())) {
+            return chain.filter(exchange);
+        }
+
+        RequestLoggingConfig requestLoggingConfig = client.requestLogger.getConfig();
+
+        // Decide on exclusion before decorating, so excluded traffic like health checks skips body capture.
+        // Only decisions that the matched route can't change are made here, all others on completion.
+        final boolean excludedByUserAgent = requestLoggingConfig.isEnabled()
+                && client.requestLogger.isUserAgentExcluded(request.getHeaders().getFirst("user-agent"));
+        final boolean excludedByRoute = requestLoggingConfig.isEnabled()
+                && !excludedByUserAgent
+                && client.requestLogger.isRegisteredRouteExcluded(
+                        request.getMethod().name(),
+                        request.getPath().pathWithinApplication().value());
+        final boolean requestLoggingEnabled =
+                requestLoggingConfig.isEnabled() && !excludedByUserAgent && !excludedByRoute;
+
+        final boolean shouldCaptureRequest = requestLoggingEnabled
+                && requestLoggingConfig.isRequestBodyIncluded()
+                && isLoggableContentType(request.getHeaders());
+        final boolean shouldCaptureResponse = requestLoggingEnabled && requestLoggingConfig.isResponseBodyIncluded();
+        CapturingRequest capturingRequest = new CapturingRequest(request, shouldCaptureRequest);
+        CapturingResponse capturingResponse = exchange.getResponse() instanceof ZeroCopyHttpOutputMessage
+                ? new ZeroCopyCapturingResponse(exchange.getResponse(), shouldCaptureResponse)
+                : new CapturingResponse(exchange.getResponse(), shouldCaptureResponse);
+
+        final ExchangeCompletion completion = new ExchangeCompletion(
+                exchange,
+                capturingRequest,
+                capturingResponse,
+                excludedByUserAgent,
+                excludedByRoute,
+                requestLoggingEnabled);
+        capturingResponse.beforeCommit(() -> Mono.fromRunnable(completion::onCommit));
+        return chain.filter(exchange.mutate()
+                        .request(capturingRequest)
+                        .response(capturingResponse)
+                        .build())
+                .doOnError(completion::onError)
+                // Runs before the completion is passed on, as servlet containers recycle the response after
+                .doOnTerminate(completion::complete)
+                .doOnCancel(completion::cancel);
+    }
+
+    private static boolean isLoggableContentType(HttpHeaders headers) {
+        return RequestLogger.isSupportedContentType(headers.getFirst(HttpHeaders.CONTENT_TYPE));
+    }
+
+    private static void capture(BodyCapture capture, DataBuffer buffer, boolean capturing) {
+        if (!capturing) {
+            capture.skip(buffer.readableByteCount());
+            return;
+        }
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                capture.append(iterator.next());
+            }
+        }
+    }
+
+    /** Records the exchange in the counters and the request log once it is complete. */
+    private class ExchangeCompletion {
+        private final ServerWebExchange exchange;
+        private final CapturingRequest capturingRequest;
+        private final CapturingResponse capturingResponse;
+        private final boolean excludedByUserAgent;
+        private final boolean excludedByRoute;
+        private final boolean requestLoggingEnabled;
+        private final long requestContentLength;
+        private final long startTime = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile Throwable error;
+        private volatile CommitSnapshot committed;
+
+        ExchangeCompletion(
+                ServerWebExchange exchange,
+                CapturingRequest capturingRequest,
+                CapturingResponse capturingResponse,
+                boolean excludedByUserAgent,
+                boolean excludedByRoute,
+                boolean requestLoggingEnabled) {
+            this.exchange = exchange;
+            this.capturingRequest = capturingRequest;
+            this.capturingResponse = capturingResponse;
+            this.excludedByUserAgent = excludedByUserAgent;
+            this.excludedByRoute = excludedByRoute;
+            this.requestLoggingEnabled = requestLoggingEnabled;
+            this.requestContentLength = exchange.getRequest().getHeaders().getContentLength();
+        }
+
+        void onError(Throwable error) {
+            this.error = error;
+        }
+
+        /**
+         * Keeps what a committed exchange is recorded with, as servlet containers may recycle the
+         * request and response while a failed write or a cancellation is handled, e.g. when the client
+         * disconnects from a stream. Headers are only copied if the exchange may be logged.
+         */
+        void onCommit() {
+            HttpStatusCode statusCode = capturingResponse.getStatusCode();
+            committed = new CommitSnapshot(
+                    statusCode != null ? statusCode.value() : 200,
+                    capturingResponse.getHeaders().getContentLength(),
+                    requestLoggingEnabled ? copyOf(exchange.getRequest().getHeaders()) : null,
+                    requestLoggingEnabled ? copyOf(capturingResponse.getHeaders()) : null);
+        }
+
+        /**
+         * A cancelled exchange only has a status code if the response was committed before, e.g. when
+         * the client disconnects from a stream. Others are not recorded, as no response was sent.
+         */
+        void cancel() {
+            CommitSnapshot snapshot = committed;
+            if (snapshot != null) {
+                record(snapshot);
+            }
+        }
+
+        void complete() {
+            record(committed);
+        }
+
+        private void record(CommitSnapshot snapshot) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                final long responseTimeInNanos = System.nanoTime() - startNanos;
+                final ServerHttpRequest request = exchange.getRequest();
+                final String method = request.getMethod().name();
+                final String pattern =
+                        getPattern(exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+
+                // Resolve route once, so the registered pattern instance is used from here on
+                final RouteRegistry routes = client.getRouteRegistry();
+                final int routeId = routes.getRouteId(method, pattern);
+                final String path = routeId != RouteRegistry.UNKNOWN ? routes.getPath(routeId) : pattern;
+
+                // Errors are rendered by exception handlers outside of web filters, so unless the
+                // response was already committed, derive the status code from the error
+                final int statusCode =
+                        snapshot != null ? snapshot.statusCode() : getStatusCode(capturingResponse, error);
+
+                // Register consumer and get consumer identifier
+                final Consumer consumer =
+                        ConsumerRegistry.consumerFromObject(exchange.getAttribute("apitallyConsumer"));
+                client.consumerRegistry.addOrUpdateConsumer(consumer);
+                final String consumerIdentifier = consumer != null ? consumer.getIdentifier() : "";
+
+                // Get exception
+                Exception exception = error instanceof Exception e ? e : null;
+                Object capturedException = exchange.getAttribute("apitallyCapturedException");
+                if (exception == null && capturedException instanceof Exception e) {
+                    exception = e;
+                }
+                if (exception == null && statusCode >= 500) {
+                    exception = getHandledException();
+                }
+
+                // Add request to counter
+                final long requestSize =
+                        requestContentLength >= 0 ? requestContentLength : capturingRequest.getByteCount();
+                final long responseContentLength = snapshot != null
+                        ? snapshot.contentLength()
+                        : capturingResponse.getHeaders().getContentLength();
+                final long responseSize =
+                        responseContentLength >= 0 ? responseContentLength : capturingResponse.getByteCount();
+                client.requestCounter.addRequestNanos(
+                        consumerIdentifier, method, path, statusCode, responseTimeInNanos, requestSize, responseSize);
+                final SlidingWindowMetrics slidingWindowMetrics = client.getSlidingWindowMetrics();
+                if (slidingWindowMetrics != null) {
+                    slidingWindowMetrics.addRequest(method, path, statusCode, responseTimeInNanos);
+                }
+
+                // Log request
+                final boolean excludedPath = excludedByRoute
+                        || (routeId != RouteRegistry.UNKNOWN
+                                ? client.requestLogger.isRouteExcluded(routeId)
+                                : client.requestLogger.isPathExcluded(
+                                        pattern != null
+                                                ? pattern
+                                                : request.getPath().value()));
+                final boolean headersAvailable = snapshot == null || snapshot.requestHeaders() != null;
+                if (client.requestLogger.isEnabled() && !excludedByUserAgent && !excludedPath && headersAvailable) {
+                    final RequestLoggingConfig requestLoggingConfig = client.requestLogger.getConfig();
+                    final boolean hasCallbacks = requestLoggingConfig.getCallbacks() != null;
+                    final Header[] requestHeaders = getHeaders(
+                            snapshot != null ? snapshot.requestHeaders() : request.getHeaders(),
+                            REQUIRED_REQUEST_HEADERS,
+                            requestLoggingConfig.isRequestHeadersIncluded() || hasCallbacks);
+                    final Header[] responseHeaders = getHeaders(
+                            snapshot != null ? snapshot.responseHeaders() : capturingResponse.getHeaders(),
+                            REQUIRED_RESPONSE_HEADERS,
+                            requestLoggingConfig.isResponseHeadersIncluded() || hasCallbacks);
+
+                    client.requestLogger.logRequest(
+                            new Request(
+                                    startTime / 1000.0,
+                                    consumerIdentifier,
+                                    method,
+                                    path,
+                                    request.getURI().toString(),
+                                    requestHeaders,
+                                    requestSize,
+                                    capturingRequest.getCapturedBody()),
+                            new Response(
+                                    statusCode,
+                                    responseTimeInNanos / 1_000_000_000.0,
+                                    responseHeaders,
+                                    responseSize,
+                                    capturingResponse.getCapturedBody()),
+                            exception,
+                            null);
+                }
+
+                // Add validation error to counter
+                if (statusCode >= 400 && statusCode < 500) {
+                    if (exception instanceof WebExchangeBindException e) {
+                        for (FieldError fieldError : e.getBindingResult().getFieldErrors()) {
+                            client.validationErrorCounter.addValidationError(
+                                    consumerIdentifier,
+                                    method,
+                                    path,
+                                    fieldError.getObjectName() + "." + fieldError.getField(),
+                                    fieldError.getDefaultMessage(),
+                                    fieldError.getCode());
+                        }
+                    } else if (exception instanceof ConstraintViolationException e) {
+                        for (ConstraintViolation<?> violation : e.getConstraintViolations()) {
+                            client.validationErrorCounter.addValidationError(
+                                    consumerIdentifier,
+                                    method,
+                                    path,
+                                    violation.getPropertyPath().toString(),
+                                    violation.getMessage(),
+                                    violation
+                                            .getConstraintDescriptor()
+                                            .getAnnotation()
+                                            .annotationType()
+                                            .getSimpleName());
+                        }
+                    }
+                }
+
+                // Add server error to counter
+                if (statusCode == 500 && exception != null) {
+                    client.serverErrorCounter.addServerError(consumerIdentifier, method, path, exception);
+                }
+            } catch (Exception e) {
+                logger.error("Error in Apitally web filter", e);
+            }
+        }
+
+        private Exception getHandledException() {
+            if (errorAttributes == null) {
+                return null;
+            }
+            try {
+                return errorAttributes.getError(ServerRequest.create(exchange, List.of())) instanceof Exception e
+                        ? e
+                        : null;
+            } catch (IllegalStateException e) {
+                // No error was stored on the exchange
+                return null;
+            }
+        }
+    }
+
+    /** Status code and headers of an exchange as they were when its response was committed. */
+    private record CommitSnapshot(
+            int statusCode, long contentLength, HttpHeaders requestHeaders, HttpHeaders responseHeaders) {}
+
+    private static HttpHeaders copyOf(HttpHeaders headers) {
+        HttpHeaders copy = new HttpHeaders();
+        copy.putAll(headers);
+        return copy;
+    }
+
+    private static String getPattern(Object pattern) {
+        if (pattern instanceof PathPattern pathPattern) {
+            return pathPattern.getPatternString();
+        }
+        return pattern != null ? pattern.toString() : null;
+    }
+
+    private static int getStatusCode(ServerHttpResponse response, Throwable error) {
+        if (error != null && !response.isCommitted()) {
+            return error instanceof ResponseStatusException e
+                    ? e.getStatusCode().value()
+                    : 500;
+        }
+        HttpStatusCode statusCode = response.getStatusCode();
+        return statusCode != null ? statusCode.value() : 200;
+    }
+
+    private static Header[] getHeaders(HttpHeaders httpHeaders, String[] requiredHeaders, boolean allHeaders) {
+        List<Header> headers = new ArrayList<>();
+        if (allHeaders) {
+            for (Map.Entry<String, List<String>> entry : httpHeaders.entrySet()) {
+                for (String value : entry.getValue()) {
+                    headers.add(new Header(entry.getKey(), value));
+                }
+            }
+        } else {
+            for (String name : requiredHeaders) {
+                String value = httpHeaders.getFirst(name);
+                if (value != null) {
+                    headers.add(new Header(name, value));
+                }
+            }
+        }
+        return headers.toArray(new Header[0]);
+    }
+
+    private static class CapturingRequest extends ServerHttpRequestDecorator {
+        private final BodyCapture capture = new BodyCapture(RequestLogger.MAX_BODY_SIZE);
+        private final boolean capturing;
+        private volatile boolean subscribed;
+
+        CapturingRequest(ServerHttpRequest request, boolean capturing) {
+            super(request);
+            this.capturing = capturing;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return super.getBody()
+                    .doOnSubscribe(subscription -> subscribed = true)
+                    .doOnNext(buffer -> capture(capture, buffer, capturing));
+        }
+
+        byte[] getCapturedBody() {
+            return capturing ? capture.toByteArray() : new byte[0];
+        }
+
+        /** Returns the number of body bytes read by the application, or -1 if it didn't read the body. */
+        long getByteCount() {
+            return subscribed ? capture.getByteCount() : -1;
+        }
+    }
+
+    /**
+     * Decides whether to capture the body at the first write, once the content type is known. Bodies
+     * of other content types, like binary downloads or server-sent events, are only counted.
+     */
+    private static class CapturingResponse extends ServerHttpResponseDecorator {
+        protected final BodyCapture capture = new BodyCapture(RequestLogger.MAX_BODY_SIZE);
+        private final boolean captureEnabled;
+        private Boolean capturing;
+
+        CapturingResponse(ServerHttpResponse response, boolean captureEnabled) {
+            super(response);
+            this.captureEnabled = captureEnabled;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.<DataBuffer>from(body).doOnNext(this::capture));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(
+                    Flux.from(body).map(inner -> Flux.<DataBuffer>from(inner).doOnNext(this::capture)));
+        }
+
+        byte[] getCapturedBody() {
+            return capturing == Boolean.TRUE ? capture.toByteArray() : new byte[0];
+        }
+
+        long getByteCount() {
+            return capture.getByteCount();
+        }
+
+        private void capture(DataBuffer buffer) {
+            if (capturing == null) {
+                capturing = captureEnabled && isLoggableContentType(getHeaders());
+            }
+            ApitallyWebFilter.capture(capture, buffer, capturing);
+        }
+    }
+
+    /** Keeps zero-copy file transfers available when the underlying response supports them. */
+    private static class ZeroCopyCapturingResponse extends CapturingResponse implements ZeroCopyHttpOutputMessage {
+        ZeroCopyCapturingResponse(ServerHttpResponse response, boolean captureEnabled) {
+            super(response, captureEnabled);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Path file, long position, long count) {
+            return ((ZeroCopyHttpOutputMessage) getDelegate())
+                    .writeWith(file, position, count)
+                    .doOnSuccess(v -> capture.skip(count));
+        }
+    }
+}
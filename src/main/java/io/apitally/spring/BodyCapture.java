@@ -0,0 +1,87 @@
+package io.apitally.spring;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps the first bytes of a body passing through a capturing stream, up to a fixed limit, and
+ * counts all bytes. Memory is bounded by the limit, regardless of the size of the body.
+ */
+class BodyCapture {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int limit;
+    private byte[] buffer = new byte[0];
+    private int length;
+    private long byteCount;
+
+    /**
+     * @param limit number of bytes to keep. One more byte is kept beyond the limit, so a body that
+     *     exceeds the limit can be told apart from one that has exactly the limit's size.
+     */
+    BodyCapture(int limit) {
+        this.limit = limit + 1;
+    }
+
+    void append(int b) {
+        byteCount++;
+        if (length < limit) {
+            ensureCapacity(length + 1);
+            buffer[length++] = (byte) b;
+        }
+    }
+
+    void append(byte[] b, int off, int len) {
+        byteCount += len;
+        int n = Math.min(len, limit - length);
+        if (n > 0) {
+            ensureCapacity(length + n);
+            System.arraycopy(b, off, buffer, length, n);
+            length += n;
+        }
+    }
+
+    /** Appends the remaining bytes of the buffer, without changing its position. */
+    void append(ByteBuffer b) {
+        int len = b.remaining();
+        byteCount += len;
+        int n = Math.min(len, limit - length);
+        if (n > 0) {
+            ensureCapacity(length + n);
+            b.get(b.position(), buffer, length, n);
+            length += n;
+        }
+    }
+
+    /** Counts bytes passing through without capturing them. */
+    void skip(long len) {
+        byteCount += len;
+    }
+
+    /** Returns whether no more bytes are kept, so bytes only need to be counted from here on. */
+    boolean isFull() {
+        return length >= limit;
+    }
+
+    /** Drops the captured bytes and the count, e.g. when the response buffer is reset. */
+    void reset() {
+        length = 0;
+        byteCount = 0;
+    }
+
+    /** Returns the captured bytes, which are longer than the limit if the body was truncated. */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    long getByteCount() {
+        return byteCount;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            int newCapacity = Math.max(buffer.length * 2, INITIAL_CAPACITY);
+            buffer = Arrays.copyOf(buffer, Math.min(Math.max(newCapacity, capacity), limit));
+        }
+    }
+}
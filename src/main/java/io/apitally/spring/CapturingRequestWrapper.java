@@ -0,0 +1,103 @@
+package io.apitally.spring;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request wrapper that keeps the first bytes of the request body for logging as the application
+ * reads it. Unlike {@link org.springframework.web.util.ContentCachingRequestWrapper}, memory is
+ * bounded by the capture limit.
+ */
+class CapturingRequestWrapper extends HttpServletRequestWrapper {
+    private final BodyCapture capture;
+    private CapturingInputStream inputStream;
+    private BufferedReader reader;
+
+    CapturingRequestWrapper(HttpServletRequest request, int captureLimit) {
+        super(request);
+        this.capture = new BodyCapture(captureLimit);
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            inputStream = new CapturingInputStream(super.getInputStream(), capture);
+        }
+        return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (reader == null) {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.ISO_8859_1;
+            reader = new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+        return reader;
+    }
+
+    /** Returns the captured prefix of the body, longer than the capture limit if it was truncated. */
+    byte[] getCapturedBody() {
+        return capture.toByteArray();
+    }
+
+    /** Returns the number of body bytes read by the application. */
+    long getByteCount() {
+        return capture.getByteCount();
+    }
+
+    private static class CapturingInputStream extends ServletInputStream {
+        private final ServletInputStream inputStream;
+        private final BodyCapture capture;
+
+        CapturingInputStream(ServletInputStream inputStream, BodyCapture capture) {
+            this.inputStream = inputStream;
+            this.capture = capture;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = inputStream.read();
+            if (b >= 0) {
+                capture.append(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = inputStream.read(b, off, len);
+            if (n > 0) {
+                capture.append(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return inputStream.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return inputStream.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            inputStream.setReadListener(readListener);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+}
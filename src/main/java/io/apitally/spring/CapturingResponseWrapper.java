@@ -0,0 +1,268 @@
+package io.apitally.spring;
+
+import io.apitally.common.RequestLogger;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Response wrapper that streams the body straight through to the client and keeps only its first
+ * bytes for logging. Unlike {@link org.springframework.web.util.ContentCachingResponseWrapper},
+ * nothing is held back from the client and memory is bounded by the capture limit.
+ *
+ * <p>Whether to capture the body is decided at the first write or commit, once the content type is
+ * known. Responses that can't be logged anyway, like binary downloads or server-sent events, are
+ * only counted. Characters written to the writer are passed to the container's writer and encoded
+ * into the capture as they are written, so the capture is complete whenever the container flushes,
+ * including when an async request completes.
+ */
+class CapturingResponseWrapper extends HttpServletResponseWrapper {
+    private final BodyCapture capture;
+    private CapturingOutputStream outputStream;
+    private CapturingWriter capturingWriter;
+    private PrintWriter writer;
+    private Boolean capturing;
+
+    CapturingResponseWrapper(HttpServletResponse response, int captureLimit) {
+        super(response);
+        this.capture = new BodyCapture(captureLimit);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called on this response");
+        }
+        if (outputStream == null) {
+            outputStream = new CapturingOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called on this response");
+            }
+            // The container fixes the character encoding when its writer is obtained
+            capturingWriter =
+                    new CapturingWriter(super.getWriter(), EncodedByteCounter.getCharset(getCharacterEncoding()));
+            writer = new PrintWriter(capturingWriter);
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        isCapturing();
+        super.flushBuffer();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        // Content type, character encoding and the choice between stream and writer may change
+        capture.reset();
+        capturing = null;
+        outputStream = null;
+        capturingWriter = null;
+        writer = null;
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        capture.reset();
+        if (capturingWriter != null) {
+            capturingWriter.reset();
+        }
+    }
+
+    /** Returns whether the body is captured, deciding it based on the content type on first call. */
+    boolean isCapturing() {
+        if (capturing == null) {
+            capturing = RequestLogger.isSupportedContentType(getContentType());
+        }
+        return capturing;
+    }
+
+    /** Returns the captured prefix of the body, longer than the capture limit if it was truncated. */
+    byte[] getCapturedBody() {
+        return capture.toByteArray();
+    }
+
+    /** Returns the number of body bytes written by the application. */
+    long getByteCount() {
+        return capture.getByteCount() + (capturingWriter != null ? capturingWriter.getUncapturedByteCount() : 0);
+    }
+
+    private class CapturingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream outputStream;
+
+        CapturingOutputStream(ServletOutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            outputStream.write(b);
+            if (isCapturing()) {
+                capture.append(b);
+            } else {
+                capture.skip(1);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            outputStream.write(b, off, len);
+            if (isCapturing()) {
+                capture.append(b, off, len);
+            } else {
+                capture.skip(len);
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return outputStream.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            outputStream.setWriteListener(writeListener);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Writer that passes characters to the container's writer and encodes them into the capture
+     * right away. Once the body isn't captured, or the capture is full, characters are only counted.
+     */
+    private class CapturingWriter extends Writer {
+        private static final int SCRATCH_SIZE = 256;
+
+        private final Writer writer;
+        private final Charset charset;
+        private final CharsetEncoder encoder;
+        private final ByteBuffer scratch = ByteBuffer.allocate(SCRATCH_SIZE);
+        // Holds a high surrogate back until its low surrogate comes in
+        private final CharBuffer pendingChars = CharBuffer.allocate(2);
+        private EncodedByteCounter counter;
+
+        CapturingWriter(Writer writer, Charset charset) {
+            this.writer = writer;
+            this.charset = charset;
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            writer.write(c);
+            if (isCounting()) {
+                counter.count((char) c);
+            } else {
+                encode(CharBuffer.wrap(new char[] {(char) c}));
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            writer.write(cbuf, off, len);
+            if (isCounting()) {
+                counter.count(cbuf, off, len);
+            } else {
+                encode(CharBuffer.wrap(cbuf, off, len));
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            writer.write(str, off, len);
+            if (isCounting()) {
+                counter.count(str, off, len);
+            } else {
+                encode(CharBuffer.wrap(str, off, off + len));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        /** Returns the number of bytes counted without being captured. */
+        long getUncapturedByteCount() {
+            return counter != null ? counter.getByteCount() : 0;
+        }
+
+        /** Drops pending characters and counted bytes, e.g. when the response buffer is reset. */
+        void reset() {
+            encoder.reset();
+            pendingChars.clear();
+            counter = null;
+        }
+
+        private boolean isCounting() {
+            if (counter == null && (!isCapturing() || capture.isFull())) {
+                counter = new EncodedByteCounter(charset);
+                if (pendingChars.position() > 0) {
+                    pendingChars.flip();
+                    counter.count(pendingChars, 0, pendingChars.remaining());
+                    pendingChars.clear();
+                }
+            }
+            return counter != null;
+        }
+
+        private void encode(CharBuffer input) {
+            while (pendingChars.position() > 0 && input.hasRemaining()) {
+                pendingChars.put(input.get()).flip();
+                encodeIntoCapture(pendingChars);
+                pendingChars.compact();
+            }
+            encodeIntoCapture(input);
+            if (input.hasRemaining()) {
+                pendingChars.put(input);
+            }
+        }
+
+        private void encodeIntoCapture(CharBuffer input) {
+            while (true) {
+                scratch.clear();
+                boolean overflow = encoder.encode(input, scratch, false).isOverflow();
+                scratch.flip();
+                capture.append(scratch);
+                if (!overflow) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package io.apitally.spring;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+
+/**
+ * Request wrapper that counts the bytes of the body as the application reads it, without buffering
+ * it. Used to get the size of requests without a Content-Length header, such as chunked uploads.
+ * Characters read through {@link #getReader()} are counted as they are encoded in the request
+ * charset.
+ *
+ * <p>A wrapper can be {@link #reset(HttpServletRequest) reset} for another request once the previous
+ * one is complete, which reuses its input stream.
+ */
+class CountingRequestWrapper extends HttpServletRequestWrapper {
+    // Wrapped while the wrapper isn't in use. Wrappers can't wrap null, and must not keep the
+    // previous request alive.
+    private static final HttpServletRequest RELEASED_REQUEST = (HttpServletRequest) Proxy.newProxyInstance(
+            HttpServletRequest.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class},
+            (proxy, method, args) -> {
+                throw new IllegalStateException("Wrapper is not in use");
+            });
+
+    private final CountingInputStream countingStream = new CountingInputStream();
+    private CountingInputStream inputStream;
+    private CountingReader reader;
+
+    CountingRequestWrapper(HttpServletRequest request) {
+        super(request);
+    }
+
+    /** Wraps a placeholder instead of the request, so the completed request can be collected. */
+    void release() {
+        reset(RELEASED_REQUEST);
+    }
+
+    /** Wraps the given request instead, discarding the counts of the previous one. */
+    void reset(HttpServletRequest request) {
+        setRequest(request);
+        countingStream.wrap(null);
+        inputStream = null;
+        reader = null;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            countingStream.wrap(super.getInputStream());
+            inputStream = countingStream;
+        }
+        return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (reader == null) {
+            BufferedReader containerReader = super.getReader();
+            reader = new CountingReader(containerReader, EncodedByteCounter.getCharset(getCharacterEncoding()));
+        }
+        return reader;
+    }
+
+    /** Returns the number of body bytes read by the application, or -1 if it didn't read the body. */
+    long getByteCount() {
+        if (inputStream == null && reader == null) {
+            return -1;
+        }
+        long byteCount = 0;
+        if (inputStream != null) {
+            byteCount += inputStream.byteCount;
+        }
+        if (reader != null) {
+            byteCount += reader.getByteCount();
+        }
+        return byteCount;
+    }
+
+    private static class CountingInputStream extends ServletInputStream {
+        private ServletInputStream inputStream;
+        private long byteCount;
+
+        void wrap(ServletInputStream inputStream) {
+            this.inputStream = inputStream;
+            this.byteCount = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = inputStream.read();
+            if (b >= 0) {
+                byteCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = inputStream.read(b, off, len);
+            if (n > 0) {
+                byteCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = inputStream.skip(n);
+            byteCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return inputStream.available();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return inputStream.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return inputStream.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            inputStream.setReadListener(readListener);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Reads from the container's reader and counts the characters read. All reads are delegated, so
+     * the buffer of this reader is never used and kept at the minimum size.
+     */
+    static class CountingReader extends BufferedReader {
+        private final BufferedReader reader;
+        private final EncodedByteCounter counter;
+
+        CountingReader(BufferedReader reader, Charset charset) {
+            super(reader, 1);
+            this.reader = reader;
+            this.counter = new EncodedByteCounter(charset);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = reader.read();
+            if (c >= 0) {
+                counter.count((char) c);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = reader.read(cbuf, off, len);
+            if (n > 0) {
+                counter.count(cbuf, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            // Line terminators count towards the size, so they can't be dropped like readLine() does
+            StringBuilder line = null;
+            while (true) {
+                int c = read();
+                if (c < 0) {
+                    return line != null ? line.toString() : null;
+                }
+                if (line == null) {
+                    line = new StringBuilder();
+                }
+                if (c == '\n') {
+                    return line.toString();
+                }
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() == '\n') {
+                        counter.count('\n');
+                    } else {
+                        reader.reset();
+                    }
+                    return line.toString();
+                }
+                line.append((char) c);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            char[] skipped = new char[(int) Math.min(n, 1024)];
+            long remaining = n;
+            while (remaining > 0) {
+                int read = read(skipped, 0, (int) Math.min(remaining, skipped.length));
+                if (read < 0) {
+                    break;
+                }
+                remaining -= read;
+            }
+            return n - remaining;
+        }
+
+        @Override
+        public boolean ready() throws IOException {
+            return reader.ready();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) throws IOException {
+            throw new IOException("mark() not supported");
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("reset() not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        long getByteCount() {
+            return counter.getByteCount();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package io.apitally.spring;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+
+/**
+ * Response wrapper that counts the bytes of the body without buffering it. Bytes written through
+ * {@link #getOutputStream()} are counted directly. Characters written through {@link #getWriter()}
+ * are passed to the container's writer as is and counted as they would be encoded in the response
+ * charset.
+ *
+ * <p>A wrapper can be {@link #reset(HttpServletResponse) reset} for another response once the
+ * previous one is complete, which reuses its output stream.
+ */
+class CountingResponseWrapper extends HttpServletResponseWrapper {
+    // Wrapped while the wrapper isn't in use. Wrappers can't wrap null, and must not keep the
+    // previous response alive.
+    private static final HttpServletResponse RELEASED_RESPONSE = (HttpServletResponse) Proxy.newProxyInstance(
+            HttpServletResponse.class.getClassLoader(),
+            new Class<?>[] {HttpServletResponse.class},
+            (proxy, method, args) -> {
+                throw new IllegalStateException("Wrapper is not in use");
+            });
+
+    private final CountingOutputStream countingStream = new CountingOutputStream();
+    private CountingOutputStream outputStream;
+    private CountingWriter countingWriter;
+    private PrintWriter writer;
+
+    CountingResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    /** Wraps a placeholder instead of the response, so the completed response can be collected. */
+    void release() {
+        reset(RELEASED_RESPONSE);
+    }
+
+    /** Wraps the given response instead, discarding the counts of the previous one. */
+    void reset(HttpServletResponse response) {
+        setResponse(response);
+        countingStream.wrap(null);
+        outputStream = null;
+        countingWriter = null;
+        writer = null;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            countingStream.wrap(super.getOutputStream());
+            outputStream = countingStream;
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            Charset charset = EncodedByteCounter.getCharset(getCharacterEncoding());
+            countingWriter = new CountingWriter(super.getWriter(), charset);
+            writer = new PrintWriter(countingWriter);
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (outputStream != null) {
+            outputStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    long getByteCount() {
+        long byteCount = 0;
+        if (outputStream != null) {
+            byteCount += outputStream.byteCount;
+        }
+        if (countingWriter != null) {
+            byteCount += countingWriter.getByteCount();
+        }
+        return byteCount;
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+        private ServletOutputStream outputStream;
+        private long byteCount;
+
+        void wrap(ServletOutputStream outputStream) {
+            this.outputStream = outputStream;
+            this.byteCount = 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return outputStream.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            outputStream.setWriteListener(writeListener);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            outputStream.write(b);
+            byteCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            outputStream.write(b, off, len);
+            byteCount += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            outputStream.close();
+        }
+    }
+
+    /** Passes characters through to the container's writer and counts their encoded length. */
+    static class CountingWriter extends Writer {
+        private final Writer writer;
+        private final EncodedByteCounter counter;
+
+        CountingWriter(Writer writer, Charset charset) {
+            this.writer = writer;
+            this.counter = new EncodedByteCounter(charset);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            writer.write(c);
+            counter.count((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            writer.write(cbuf, off, len);
+            counter.count(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            writer.write(str, off, len);
+            counter.count(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        long getByteCount() {
+            return counter.getByteCount();
+        }
+    }
+}
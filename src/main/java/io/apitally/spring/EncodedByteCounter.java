@@ -0,0 +1,133 @@
+package io.apitally.spring;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Counts the encoded length of characters passing through a reader or writer, without keeping
+ * them. UTF-8 and single-byte charsets are counted arithmetically, others are encoded into a small
+ * scratch buffer that is reused across calls. Surrogate pairs split across calls are counted as one
+ * character.
+ */
+class EncodedByteCounter {
+    private static final int SCRATCH_SIZE = 256;
+
+    private final boolean utf8;
+    private CharsetEncoder encoder;
+    private ByteBuffer scratch;
+    private CharBuffer chars;
+    private boolean pendingHighSurrogate;
+    private char highSurrogate;
+    private long byteCount;
+
+    EncodedByteCounter(Charset charset) {
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        CharsetEncoder charsetEncoder = charset.newEncoder();
+        if (!utf8 && charsetEncoder.maxBytesPerChar() > 1.0f) {
+            this.encoder = charsetEncoder
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.scratch = ByteBuffer.allocate(SCRATCH_SIZE);
+            this.chars = CharBuffer.allocate(2);
+        }
+    }
+
+    /** Returns the charset of the given encoding, falling back to the servlet default ISO-8859-1. */
+    static Charset getCharset(String characterEncoding) {
+        try {
+            return characterEncoding != null ? Charset.forName(characterEncoding) : StandardCharsets.ISO_8859_1;
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    void count(char c) {
+        if (encoder == null) {
+            countArithmetically(c);
+        } else {
+            countEncoded(CharBuffer.wrap(new char[] {c}));
+        }
+    }
+
+    void count(char[] cbuf, int off, int len) {
+        if (encoder == null) {
+            for (int i = off; i < off + len; i++) {
+                countArithmetically(cbuf[i]);
+            }
+        } else {
+            countEncoded(CharBuffer.wrap(cbuf, off, len));
+        }
+    }
+
+    void count(CharSequence str, int off, int len) {
+        if (encoder == null) {
+            for (int i = off; i < off + len; i++) {
+                countArithmetically(str.charAt(i));
+            }
+        } else {
+            countEncoded(CharBuffer.wrap(str, off, off + len));
+        }
+    }
+
+    long getByteCount() {
+        // An unpaired high surrogate at the end is encoded as a replacement
+        return byteCount + (pendingHighSurrogate ? getReplacementLength() : 0);
+    }
+
+    private void countArithmetically(char c) {
+        if (pendingHighSurrogate) {
+            pendingHighSurrogate = false;
+            if (Character.isLowSurrogate(c)) {
+                byteCount += utf8 ? 4 : 1;
+                return;
+            }
+            byteCount++;
+        }
+        if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = true;
+        } else if (!utf8 || c < 0x80 || Character.isLowSurrogate(c)) {
+            byteCount++;
+        } else {
+            byteCount += c < 0x800 ? 2 : 3;
+        }
+    }
+
+    private void countEncoded(CharBuffer input) {
+        if (pendingHighSurrogate && input.hasRemaining()) {
+            pendingHighSurrogate = false;
+            if (Character.isLowSurrogate(input.get(input.position()))) {
+                chars.clear();
+                chars.put(highSurrogate).put(input.get()).flip();
+                encode(chars);
+            } else {
+                byteCount += getReplacementLength();
+            }
+        }
+        if (input.hasRemaining() && Character.isHighSurrogate(input.get(input.limit() - 1))) {
+            // Hold back the high surrogate until its low surrogate comes in
+            highSurrogate = input.get(input.limit() - 1);
+            pendingHighSurrogate = true;
+            input.limit(input.limit() - 1);
+        }
+        encode(input);
+    }
+
+    private void encode(CharBuffer input) {
+        while (true) {
+            scratch.clear();
+            boolean overflow = encoder.encode(input, scratch, false).isOverflow();
+            byteCount += scratch.position();
+            if (!overflow) {
+                return;
+            }
+        }
+    }
+
+    private int getReplacementLength() {
+        return encoder != null ? encoder.replacement().length : 1;
+    }
+}
@@ -10,11 +10,11 @@ import org.springframework.context.annotation.Import;
 /**
  * Enables Apitally integration for a Spring Boot application. Registers a filter that captures
  * requests and responses, and creates an ApitallyClient instance that handles background
- * synchronization with Apitally.
+ * synchronization with Apitally. Both servlet and reactive (WebFlux) applications are supported.
  */
 @Target({ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
-@Import({ApitallyAutoConfiguration.class})
+@Import({ApitallyAutoConfiguration.class, ApitallyReactiveAutoConfiguration.class})
 public @interface UseApitally {
     Class<? extends Annotation> annotation() default Annotation.class;
 }
@@ -0,0 +1,108 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class BoundedRingBufferTest {
+
+    @Test
+    void testOfferAndPoll() {
+        BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(3);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+
+        // Wrap around the slots a few times
+        for (int lap = 0; lap < 3; lap++) {
+            assertTrue(buffer.offer(1));
+            assertTrue(buffer.offer(2));
+            assertTrue(buffer.offer(3));
+            assertFalse(buffer.offer(4));
+            assertEquals(3, buffer.size());
+
+            assertEquals(1, (int) buffer.poll());
+            assertTrue(buffer.offer(4));
+            assertEquals(2, (int) buffer.poll());
+            assertEquals(3, (int) buffer.poll());
+            assertEquals(4, (int) buffer.poll());
+            assertNull(buffer.poll());
+            assertEquals(0, buffer.size());
+        }
+    }
+
+    @Test
+    void testDrainTo() {
+        BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(5);
+        for (int i = 0; i < 5; i++) {
+            buffer.offer(i);
+        }
+
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(3, buffer.drainTo(batch, 3));
+        assertEquals(List.of(0, 1, 2), batch);
+        assertTrue(buffer.offer(5));
+        assertEquals(3, buffer.drainTo(batch, 10));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), batch);
+        assertEquals(0, buffer.drainTo(batch, 10));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentProducers() throws InterruptedException {
+        int threadCount = 4;
+        int itemsPerThread = 5_000;
+        BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(64);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t * itemsPerThread;
+            Thread thread = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < itemsPerThread; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        // Let the consumer run, which may share the only CPU
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        startLatch.countDown();
+        Set<Integer> received = new HashSet<>();
+        List<Integer> batch = new ArrayList<>();
+        while (received.size() < threadCount * itemsPerThread) {
+            buffer.drainTo(batch, 16);
+            Integer item = buffer.poll();
+            if (item != null) {
+                batch.add(item);
+            }
+            if (batch.isEmpty()) {
+                Thread.yield();
+            }
+            received.addAll(batch);
+            batch.clear();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threadCount * itemsPerThread, received.size());
+        assertTrue(buffer.isEmpty());
+    }
+}
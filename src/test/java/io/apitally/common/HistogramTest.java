@@ -0,0 +1,46 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+    @Test
+    void testDenseAndOverflowBins() {
+        Histogram histogram = new Histogram(4);
+        assertTrue(histogram.toMap(1).isEmpty());
+
+        histogram.add(0);
+        histogram.add(3);
+        histogram.add(3);
+        histogram.add(4);
+        histogram.add(250);
+        histogram.add(-1);
+
+        assertEquals(2, histogram.getCount(3));
+        assertEquals(1, histogram.getCount(250));
+        assertEquals(0, histogram.getCount(2));
+        assertEquals(0, histogram.getCount(1000));
+        assertEquals(Map.of(0, 1, 3, 2, 4, 1, 250, 1, -1, 1), histogram.toMap(1));
+        assertEquals(Map.of(0, 1, 30, 2, 40, 1, 2500, 1, -10, 1), histogram.toMap(10));
+    }
+
+    @Test
+    void testMerge() {
+        Histogram histogram = new Histogram(4);
+        histogram.add(1);
+        histogram.add(100);
+
+        Histogram other = new Histogram(4);
+        other.add(1, 2);
+        other.add(100);
+        other.add(200);
+
+        histogram.merge(other);
+        assertEquals(Map.of(1, 3, 100, 2, 200, 1), histogram.toMap(1));
+        assertEquals(Map.of(1, 2, 100, 1, 200, 1), other.toMap(1));
+    }
+}
@@ -0,0 +1,86 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class JsonBodyMaskerTest {
+    private static final Pattern MASK_PATTERN = Pattern.compile("password|token", Pattern.CASE_INSENSITIVE);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonBodyMasker masker = new JsonBodyMasker(
+            JsonFactory.builder()
+                    .enable(JsonWriteFeature.COMBINE_UNICODE_SURROGATES_IN_UTF8)
+                    .build(),
+            name -> MASK_PATTERN.matcher(name).find(),
+            "******");
+
+    @Test
+    void testSameOutputAsTree() throws IOException {
+        List<String> bodies = List.of(
+                "{\"username\": \"bob\", \"password\": \"secret\"}",
+                "{\"user\": {\"Password\": \"secret\", \"token\": 123, \"tokens\": [\"a\", \"b\"]}}",
+                "[{\"token\": \"a\"}, {\"token\": null}, {\"token\": true}, {\"token\": {\"token\": \"b\"}}]",
+                "{\"a\": 1.10, \"b\": 1e5, \"c\": -0, \"d\": -0.0, \"e\": 12345678901234567890123, \"f\": 1e400}",
+                "{\"a\": 0.1, \"b\": 1.0E-7, \"c\": 9007199254740993, \"d\": 3.141592653589793238}",
+                "{\"text\": \"line\\nbreak \\u00e4 \\ud83d\\ude00 \\\"quoted\\\" \\/\"}",
+                "{\"text\": \"\u00e4\u00f6\u00fc \ud83d\ude00\"}",
+                "  {\"a\" : [ ] , \"b\" : { } }  ",
+                "\"password\"",
+                "42",
+                "null",
+                "{\"a\": 1} trailing");
+        for (String body : bodies) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            assertEquals(
+                    new String(maskTree(bytes), StandardCharsets.UTF_8),
+                    new String(masker.mask(bytes), StandardCharsets.UTF_8),
+                    body);
+        }
+    }
+
+    @Test
+    void testRejectedBodies() throws IOException {
+        assertNull(masker.mask(new byte[0]));
+        assertNull(masker.mask("   ".getBytes(StandardCharsets.UTF_8)));
+        assertNull(masker.mask("\ufeff{\"password\": \"secret\"}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(masker.mask("{\"password\": \"secret\"}".getBytes(StandardCharsets.UTF_16BE)));
+        assertNull(masker.mask("{\"text\": \"\\ud83d\"}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IOException.class, () -> masker.mask("{\"a\": 1, \"a\": 2}".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IOException.class, () -> masker.mask("{\"a\": [1, 2".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IOException.class, () -> masker.mask(new byte[] {'"', (byte) 0xC3, '"'}));
+    }
+
+    private byte[] maskTree(byte[] body) throws IOException {
+        JsonNode node = objectMapper.readTree(new String(body, StandardCharsets.UTF_8));
+        maskNode(node);
+        return objectMapper.writeValueAsString(node).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void maskNode(JsonNode node) {
+        if (node.isObject()) {
+            ObjectNode objectNode = (ObjectNode) node;
+            objectNode.fields().forEachRemaining(entry -> {
+                if (entry.getValue().isTextual()
+                        && MASK_PATTERN.matcher(entry.getKey()).find()) {
+                    objectNode.put(entry.getKey(), "******");
+                } else {
+                    maskNode(entry.getValue());
+                }
+            });
+        } else if (node.isArray()) {
+            node.forEach(this::maskNode);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class KeyFragmentPrefilterTest {
+
+    @Test
+    void testGetRequiredFragments() {
+        assertEquals(List.of("password"), fragments("password"));
+        assertEquals(List.of("number"), fragments("card[-_ ]?number"));
+        assertEquals(List.of("api"), fragments("api-?key"));
+        assertEquals(List.of("pass", "pwd"), fragments("pass|pwd"));
+        assertEquals(List.of("secret"), fragments("^x?secret\\d+$"));
+        assertEquals(List.of("user.name"), fragments("user\\.name"));
+        assertEquals(List.of("token"), fragments("(access|refresh)_?token"));
+        assertEquals(List.of("bc"), fragments("a{0,2}bc+"));
+        assertEquals(List.of("secret"), fragments("(?i)secret"));
+        assertEquals(List.of("key"), fragments("x(?i:_)?key"));
+        assertEquals(List.of("json"), fragments("\\bjson\\b"));
+
+        assertNull(fragments(".*"));
+        assertNull(fragments("key|\\d+"));
+        assertNull(fragments("(?-i)secret"));
+        assertNull(fragments("(?=x)secret"));
+        assertNull(fragments("\\Qsecret\\E"));
+        assertNull(KeyFragmentPrefilter.getRequiredFragments(
+                Pattern.compile("secret", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)));
+    }
+
+    @Test
+    void testMayMatch() {
+        KeyFragmentPrefilter prefilter = KeyFragmentPrefilter.forPatterns(
+                List.of(compile("password"), compile("card[-_ ]?number"), compile("ssn"), compile("auth")));
+        assertTrue(prefilter.isEnabled());
+
+        assertFalse(mayMatch(prefilter, "{\"id\": 1, \"name\": \"bob\", \"items\": [\"a\", \"b\"]}"));
+        assertFalse(mayMatch(prefilter, "{\"pass\": \"x\", \"word\": \"y\", \"sn\": \"s\u00e4sn\"}"));
+        assertTrue(mayMatch(prefilter, "{\"user\": {\"PassWord\": \"secret\"}}"));
+        assertTrue(mayMatch(prefilter, "{\"card_NUMBER\": \"4111\"}"));
+        assertTrue(mayMatch(prefilter, "{\"authorization\": \"x\"}"));
+        // Overlapping fragments are found through the failure transitions
+        assertTrue(mayMatch(prefilter, "{\"sssn\": 1}"));
+        assertTrue(mayMatch(prefilter, "{\"aauauth\": 1}"));
+        // Unicode escapes may hide a fragment
+        assertTrue(mayMatch(prefilter, "{\"p\\u0061ssword\": \"secret\"}"));
+    }
+
+    @Test
+    void testDisabledForUnsupportedPatterns() {
+        KeyFragmentPrefilter prefilter = KeyFragmentPrefilter.forPatterns(List.of(compile("password"), compile("x.*")));
+        assertTrue(prefilter.isEnabled());
+        prefilter = KeyFragmentPrefilter.forPatterns(List.of(compile("password"), compile(".*_id")));
+        assertTrue(prefilter.isEnabled());
+        prefilter = KeyFragmentPrefilter.forPatterns(List.of(compile("password"), compile("\\w+")));
+        assertFalse(prefilter.isEnabled());
+        assertTrue(mayMatch(prefilter, "{\"id\": 1}"));
+    }
+
+    private static List<String> fragments(String regex) {
+        return KeyFragmentPrefilter.getRequiredFragments(compile(regex));
+    }
+
+    private static Pattern compile(String regex) {
+        return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+    }
+
+    private static boolean mayMatch(KeyFragmentPrefilter prefilter, String body) {
+        return prefilter.mayMatch(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,75 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testRelativeError() {
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram(5);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(10_000_000));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getTotalCount());
+        for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getValueAtPercentile(percentile);
+            assertTrue(
+                    Math.abs(estimate - exact) <= Math.max(1, exact / 32.0),
+                    "p" + percentile + ": " + estimate + " vs " + exact);
+        }
+    }
+
+    @Test
+    void testToMillisecondBins() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(400);
+        histogram.record(9_000);
+        histogram.record(15_000);
+        histogram.record(105_000);
+        histogram.record(5_000_000);
+
+        // 5s falls into a sub-bucket of width 131ms, where a single value lands in the bin at its midpoint
+        assertEquals(Map.of(0, 3, 10, 1, 100, 1, 5040, 1), histogram.toMillisecondBins(10));
+    }
+
+    @Test
+    void testToMillisecondBinsSpreadsWideSubBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 1310; i++) {
+            histogram.record(4_980_736 + i * 100L);
+        }
+
+        // The sub-bucket from 4980.736ms to 5111.808ms overlaps 14 bins, which all get a share
+        Map<Integer, Integer> bins = histogram.toMillisecondBins(10);
+        assertEquals(14, bins.size());
+        assertEquals(1310, bins.values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(93, bins.get(4980));
+        assertEquals(100, bins.get(5050));
+        assertEquals(18, bins.get(5110));
+    }
+
+    @Test
+    void testCopy() {
+        LatencyHistogram histogram = new LatencyHistogram(3);
+        histogram.recordNanos(1_500_000);
+        LatencyHistogram copy = histogram.copy();
+        histogram.recordNanos(1_500_000);
+
+        assertEquals(3, copy.getPrecisionBits());
+        assertEquals(1, copy.getTotalCount());
+        assertEquals(2, histogram.getTotalCount());
+    }
+}
@@ -0,0 +1,214 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class LinearRegexTest {
+    private static final List<String> PATTERNS = List.of(
+            "/_?healthz?$",
+            "/favicon(?:-[\\w-]+)?\\.(ico|png|svg)$",
+            "health[-_ ]?check",
+            "api-?key",
+            "card[-_ ]?number",
+            "^x?secret\\d+$",
+            "a{2,3}b?",
+            "(a|ab)(c|bcd)(d*)",
+            "[^a-c]x",
+            "[A-z]",
+            "\\W\\s\\S\\D",
+            "a.c",
+            "^$",
+            "",
+            "(a*)*b",
+            "x{0}y",
+            "a+?b",
+            "[-a]|[a-]|\\x41\\u0062",
+            "\\.\\*\\+\\?\\(\\)\\[\\]\\{\\}\\|\\\\",
+            "(?i)test",
+            "a(?ii)b|(?i:c|d)e",
+            "\\bjson\\b",
+            "\\b\\w+\\b-",
+            "a\\b",
+            "\\b[^a]");
+    private static final List<String> INPUTS = List.of(
+            "",
+            "/healthz",
+            "/_health\n",
+            "/health\r\n",
+            "/health\n\n",
+            "/favicon-32x32.PNG",
+            "X-API-KEY",
+            "card number",
+            "xsecret42",
+            "SECRET1\r",
+            "aab",
+            "abcd",
+            "dx",
+            "Ax",
+            "[",
+            "! a1",
+            "a\nc",
+            "abc",
+            "aaab",
+            "y",
+            "-",
+            "aB",
+            ".*+?()[]{}|\\",
+            "\ud83d\ude00x",
+            "\ud83dx",
+            "\u2028",
+            "X-Test",
+            "AB",
+            "ce",
+            "application/json",
+            "application/jsonp",
+            "application/ld_json",
+            "\u00e9json",
+            "e\u0301json-",
+            "\u0301json a",
+            "-\u0301a",
+            "a\u0301\u0301",
+            "\ud835\udc00json",
+            "\ud834\udd67json",
+            "a\ud834\udd67");
+
+    @Test
+    void testSameResultsAsPattern() {
+        for (String regex : PATTERNS) {
+            assertTrue(LinearRegex.isSupported(regex), regex);
+            LinearRegex linearRegex = LinearRegex.compile(List.of(regex));
+            Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            for (String input : INPUTS) {
+                assertEquals(pattern.matcher(input).find(), linearRegex.find(input), regex + " on " + input);
+            }
+        }
+    }
+
+    @Test
+    void testSameResultsAsPatternForRandomPatterns() {
+        Random random = new Random(42);
+        int compared = 0;
+        while (compared < 2000) {
+            String regex = randomRegex(random, 3);
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            } catch (Exception e) {
+                continue;
+            }
+            if (!LinearRegex.isSupported(regex)) {
+                continue;
+            }
+            LinearRegex linearRegex = LinearRegex.compile(List.of(regex));
+            for (int i = 0; i < 20; i++) {
+                String input = randomInput(random);
+                assertEquals(pattern.matcher(input).find(), linearRegex.find(input), regex + " on " + input);
+            }
+            compared++;
+        }
+    }
+
+    @Test
+    void testCombinedPatterns() {
+        LinearRegex linearRegex = LinearRegex.compile(List.of("^auth$", "token", "(x)y"));
+        assertTrue(linearRegex.find("Auth"));
+        assertTrue(linearRegex.find("access_token"));
+        assertTrue(linearRegex.find("XY"));
+        assertFalse(linearRegex.find("authorization"));
+    }
+
+    @Test
+    void testUnsupportedPatterns() {
+        assertFalse(LinearRegex.isSupported("(a)\\1"));
+        assertFalse(LinearRegex.isSupported("a(?=b)"));
+        assertFalse(LinearRegex.isSupported("(?-i)a"));
+        assertFalse(LinearRegex.isSupported("(?iu)a"));
+        assertFalse(LinearRegex.isSupported("(?x)a"));
+        assertFalse(LinearRegex.isSupported("(?i)*"));
+        assertFalse(LinearRegex.isSupported("(?<name>a)"));
+        assertFalse(LinearRegex.isSupported("a++"));
+        assertFalse(LinearRegex.isSupported("\\Bword"));
+        assertFalse(LinearRegex.isSupported("\\b{g}"));
+        assertFalse(LinearRegex.isSupported("\\b+"));
+        assertFalse(LinearRegex.isSupported("\\Qa.b\\E"));
+        assertFalse(LinearRegex.isSupported("\\p{Alpha}"));
+        assertFalse(LinearRegex.isSupported("[a-z&&[^b]]"));
+        assertFalse(LinearRegex.isSupported("\ud83d\ude00"));
+        assertFalse(LinearRegex.isSupported("((a{100}){100}){100}"));
+    }
+
+    @Test
+    void testLinearTimeOnAdversarialInput() {
+        String input = "a".repeat(50_000) + "!";
+        for (String regex : List.of("(a+)+$", "(a|aa)+$", "(\\w+\\s?)+$", "^(a|a?)+$")) {
+            // Backtracking would take longer than the age of the universe
+            long start = System.nanoTime();
+            assertFalse(LinearRegex.compile(List.of(regex)).find(input));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), regex);
+        }
+    }
+
+    private static String randomRegex(Random random, int depth) {
+        StringBuilder regex = new StringBuilder();
+        int atoms = 1 + random.nextInt(3);
+        for (int i = 0; i < atoms; i++) {
+            int choice = random.nextInt(depth > 0 ? 12 : 9);
+            switch (choice) {
+                case 0:
+                    regex.append('.');
+                    break;
+                case 1:
+                    regex.append(random.nextBoolean() ? '^' : '$');
+                    break;
+                case 2:
+                    regex.append(random.nextBoolean() ? "[^" : "[")
+                            .append(randomChar(random))
+                            .append(random.nextBoolean() ? "-" + randomChar(random) : "")
+                            .append(']');
+                    break;
+                case 3:
+                    regex.append('\\').append("dDwWsSb".charAt(random.nextInt(7)));
+                    break;
+                case 4:
+                    regex.append(random.nextBoolean() ? "(?i)" : randomChar(random));
+                    break;
+                case 9:
+                case 10:
+                    regex.append(random.nextBoolean() ? "(" : "(?:")
+                            .append(randomRegex(random, depth - 1))
+                            .append(')');
+                    break;
+                case 11:
+                    regex.append(randomRegex(random, depth - 1)).append('|').append(randomRegex(random, depth - 1));
+                    break;
+                default:
+                    regex.append(randomChar(random));
+            }
+            if (choice != 1 && choice != 11 && random.nextInt(3) == 0) {
+                String[] quantifiers = {"*", "+", "?", "{2}", "{1,}", "{0,2}", "*?", "+?"};
+                regex.append(quantifiers[random.nextInt(quantifiers.length)]);
+            }
+        }
+        return regex.toString();
+    }
+
+    private static char randomChar(Random random) {
+        return "abAB-_ 1\n".charAt(random.nextInt(9));
+    }
+
+    private static String randomInput(Random random) {
+        StringBuilder input = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            input.append("abAB-_ 1\n\r\u00e4\u0301".charAt(random.nextInt(12)));
+        }
+        return input.toString();
+    }
+}
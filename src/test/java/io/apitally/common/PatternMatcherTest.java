@@ -0,0 +1,104 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PatternMatcherTest {
+
+    @Test
+    void testMatches() {
+        PatternMatcher matcher = new PatternMatcher(List.of("auth", "api-?key", "card[-_ ]?number"), 100);
+        assertTrue(matcher.matches("Authorization"));
+        assertTrue(matcher.matches("X-API-Key"));
+        assertTrue(matcher.matches("apikey"));
+        assertTrue(matcher.matches("card_number"));
+        assertFalse(matcher.matches("Content-Type"));
+        assertFalse(matcher.matches(""));
+
+        assertFalse(new PatternMatcher(List.of(), 100).matches("auth"));
+    }
+
+    @Test
+    void testMatchesPatternsThatCantBeCombined() {
+        // Back references are numbered across all patterns of an alternation
+        PatternMatcher matcher = new PatternMatcher(List.of("(a)(b)", "(x)\\1"), 100);
+        assertTrue(matcher.matches("xx"));
+        assertFalse(matcher.matches("xa"));
+
+        matcher = new PatternMatcher(List.of("\\Qa.b", "secret"), 100);
+        assertTrue(matcher.matches("a.b"));
+        assertFalse(matcher.matches("axb"));
+        assertTrue(matcher.matches("secret"));
+
+        matcher = new PatternMatcher(List.of("(?x) a b # comment", "secret"), 100);
+        assertTrue(matcher.matches("AB"));
+        assertTrue(matcher.matches("secret"));
+
+        // Inline flags only apply within the group of their pattern
+        matcher = new PatternMatcher(List.of("(?-i)token", "secret"), 100);
+        assertFalse(matcher.matches("TOKEN"));
+        assertTrue(matcher.matches("SECRET"));
+    }
+
+    @Test
+    void testFallbackForUnsupportedPatterns() {
+        PatternMatcher matcher = new PatternMatcher(List.of("(a)\\1", "\\Bkey\\B", "secret"), 100);
+        assertEquals(2, matcher.getFallbackPatterns().size());
+        assertTrue(matcher.matches("aa"));
+        assertTrue(matcher.matches("apikeys"));
+        assertTrue(matcher.matches("secret"));
+        assertFalse(matcher.matches("api key"));
+
+        // Word boundaries and the case insensitive flag are matched by the linear-time engine
+        matcher = new PatternMatcher(List.of("\\bkey\\b", "(?i)token", "(?i:auth)"), 100);
+        assertTrue(matcher.getFallbackPatterns().isEmpty());
+        assertTrue(matcher.matches("api key"));
+        assertFalse(matcher.matches("apikey"));
+        assertTrue(matcher.matches("X-Token"));
+        assertTrue(matcher.matches("Authorization"));
+
+        // Would backtrack for longer than the test could ever wait
+        matcher = new PatternMatcher(List.of("(a+)+$"), 100);
+        assertTrue(matcher.getFallbackPatterns().isEmpty());
+        assertFalse(matcher.matches("a".repeat(10_000) + "!"));
+    }
+
+    @Test
+    void testCacheHitsAndMisses() {
+        PatternMatcher matcher = new PatternMatcher(List.of("auth", "token"), 100);
+        assertTrue(matcher.matches("Authorization"));
+        assertTrue(matcher.matches("Authorization"));
+        assertFalse(matcher.matches("Accept"));
+        assertFalse(matcher.matches("Accept"));
+        assertFalse(matcher.matches("Accept"));
+        assertEquals(3, matcher.getHitCount());
+        assertEquals(2, matcher.getMissCount());
+        assertEquals(2, matcher.getCacheSize());
+
+        // Long names are matched every time
+        String longName = "x".repeat(1000) + "token";
+        assertTrue(matcher.matches(longName));
+        assertTrue(matcher.matches(longName));
+        assertEquals(4, matcher.getMissCount());
+        assertEquals(2, matcher.getCacheSize());
+    }
+
+    @Test
+    void testCacheEviction() {
+        PatternMatcher matcher = new PatternMatcher(List.of("secret"), 10);
+        assertTrue(matcher.matches("secret"));
+        for (int i = 0; i < 1000; i++) {
+            // Frequent names survive high-cardinality input
+            assertTrue(matcher.matches("secret"));
+            assertFalse(matcher.matches("/items/" + i));
+            assertTrue(matcher.getCacheSize() <= 10);
+        }
+        assertEquals(1000, matcher.getHitCount());
+        assertEquals(1001, matcher.getMissCount());
+        assertTrue(matcher.getEvictionCount() > 900);
+    }
+}
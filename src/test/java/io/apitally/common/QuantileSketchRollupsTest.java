@@ -0,0 +1,122 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.apitally.common.dto.ResponseTimeSketch;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class QuantileSketchRollupsTest {
+
+    @Test
+    void testHourlyRollups() {
+        AtomicLong now = new AtomicLong(1_700_000_000L - 1_700_000_000L % 3600);
+        QuantileSketchRollups rollups = new QuantileSketchRollups(0.01, 2048, 24, 100, now::get);
+
+        // One sync interval per minute over 25 hours, with slow intervals in the last hour
+        for (int minute = 0; minute < 25 * 60; minute++) {
+            QuantileSketch sketch = rollups.newSketch();
+            for (int i = 0; i < 10; i++) {
+                sketch.add(minute >= 24 * 60 + 30 ? 1000 : 10);
+            }
+            long intervalStart = now.getAndAdd(60);
+            rollups.add(intervalStart, null, "get", "/items", 200, sketch);
+        }
+
+        // The last sync happened at the start of hour 25, so hours 2 to 24 are retained
+        List<ResponseTimeSketch> dump = rollups.dump();
+        assertEquals(23, dump.size());
+        assertTrue(dump.stream().allMatch(s -> s.getCount() == 600));
+        assertEquals("GET", dump.get(0).getMethod());
+        assertNull(dump.get(0).getConsumer());
+
+        assertEquals(10, rollups.getQuantile("", "GET", "/items", 200, 0.97), 10 * 0.01);
+        assertEquals(1000, rollups.getQuantile("", "GET", "/items", 200, 0.999), 1000 * 0.01);
+        assertTrue(Double.isNaN(rollups.getQuantile("", "GET", "/other", 200, 0.5)));
+
+        // Query a time range within the last hour only
+        long lastHour = dump.get(dump.size() - 1).getHour();
+        QuantileSketch sketch = rollups.getSketch(null, "GET", "/items", 200, lastHour + 10, lastHour + 20);
+        assertEquals(600, sketch.getCount());
+        assertEquals(10, sketch.getQuantile(0.25), 10 * 0.01);
+        assertEquals(1000, sketch.getQuantile(0.75), 1000 * 0.01);
+    }
+
+    @Test
+    void testRollupsKeyedByIntervalStart() {
+        long hour = 1_700_000_000L - 1_700_000_000L % 3600;
+        AtomicLong now = new AtomicLong(hour + 3600 + 30);
+        QuantileSketchRollups rollups = new QuantileSketchRollups(0.01, 2048, 24, 100, now::get);
+
+        // Interval that started before the hour boundary and was synced after it
+        QuantileSketch sketch = rollups.newSketch();
+        sketch.add(10);
+        rollups.add(hour + 3600 - 30, "", "GET", "/items", 200, sketch);
+
+        List<ResponseTimeSketch> dump = rollups.dump();
+        assertEquals(1, dump.size());
+        assertEquals(hour, dump.get(0).getHour());
+
+        // Intervals that started before the retention period are dropped
+        rollups.add(hour - 24 * 3600, "", "GET", "/items", 200, sketch);
+        assertEquals(1, rollups.dump().size());
+    }
+
+    @Test
+    void testKeyBudget() {
+        AtomicLong now = new AtomicLong(1_700_000_000L - 1_700_000_000L % 3600);
+        QuantileSketchRollups rollups = new QuantileSketchRollups(0.01, 2048, 2, 2, now::get);
+        QuantileSketch sketch = rollups.newSketch();
+        sketch.add(10);
+
+        rollups.add(now.get(), "", "GET", "/items", 200, sketch);
+        rollups.add(now.get(), "", "GET", "/items/{id}", 200, sketch);
+        for (int i = 0; i < 10; i++) {
+            rollups.add(now.get(), "consumer-" + i, "GET", "/items", 200, sketch);
+        }
+        // Keys of earlier hours count against the same budget, but only once
+        now.addAndGet(3600);
+        rollups.add(now.get(), "", "GET", "/items", 200, sketch);
+        rollups.add(now.get(), "", "GET", "/other", 200, sketch);
+        assertEquals(11, rollups.getFoldedSketchCount());
+
+        QuantileSketch overflow = rollups.getSketch(
+                RequestCounter.OVERFLOW_KEY_PART, "GET", RequestCounter.OVERFLOW_KEY_PART, 200, 0, Long.MAX_VALUE);
+        assertEquals(11, overflow.getCount());
+        assertEquals(
+                2,
+                rollups.getSketch("", "GET", "/items", 200, 0, Long.MAX_VALUE).getCount());
+
+        // Keys are returned to the budget once no retained hour has them
+        now.addAndGet(3600);
+        rollups.add(now.get(), "consumer-1", "GET", "/items", 200, sketch);
+        assertEquals(11, rollups.getFoldedSketchCount());
+        assertEquals(
+                1,
+                rollups.getSketch("consumer-1", "GET", "/items", 200, 0, Long.MAX_VALUE)
+                        .getCount());
+        rollups.add(now.get(), "consumer-2", "GET", "/items", 200, sketch);
+        assertEquals(12, rollups.getFoldedSketchCount());
+    }
+
+    @Test
+    void testKeySpanningHoursCountedOnce() {
+        AtomicLong now = new AtomicLong(1_700_000_000L - 1_700_000_000L % 3600);
+        QuantileSketchRollups rollups = new QuantileSketchRollups(0.01, 2048, 24, 1, now::get);
+        QuantileSketch sketch = rollups.newSketch();
+        sketch.add(10);
+
+        rollups.add(now.get(), "", "GET", "/items", 200, sketch);
+        now.addAndGet(3600);
+        rollups.add(now.get(), "", "GET", "/items", 200, sketch);
+
+        assertEquals(0, rollups.getFoldedSketchCount());
+        assertEquals(2, rollups.dump().size());
+        assertEquals(
+                2,
+                rollups.getSketch("", "GET", "/items", 200, 0, Long.MAX_VALUE).getCount());
+    }
+}
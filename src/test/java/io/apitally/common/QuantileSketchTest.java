@@ -0,0 +1,94 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class QuantileSketchTest {
+    private static final double[] QUANTILES = {0.0, 0.1, 0.5, 0.9, 0.95, 0.99, 0.999, 1.0};
+
+    @Test
+    void testAccuracy() {
+        Random random = new Random(42);
+        double[] values = new double[100_000];
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal distribution with a long tail, roughly 1ms to several seconds
+            values[i] = Math.exp(3 + 1.5 * random.nextGaussian());
+            sketch.add(values[i]);
+        }
+
+        assertEquals(values.length, sketch.getCount());
+        assertQuantiles(values, sketch, QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    @Test
+    void testMerge() {
+        Random random = new Random(7);
+        double[] values = new double[20_000];
+        QuantileSketch[] sketches = {new QuantileSketch(), new QuantileSketch(), new QuantileSketch()};
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + random.nextDouble() * (i % 3 == 0 ? 5000 : 50);
+            sketches[i % 3].add(values[i]);
+        }
+
+        QuantileSketch merged = new QuantileSketch();
+        for (QuantileSketch sketch : sketches) {
+            merged.merge(sketch);
+        }
+        assertEquals(values.length, merged.getCount());
+        assertQuantiles(values, merged, QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+        assertQuantiles(values, merged.copy(), QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new QuantileSketch(0.05, 100)));
+    }
+
+    @Test
+    void testBoundedMemory() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 256);
+        double[] values = new double[10_000];
+        for (int i = 0; i < values.length; i++) {
+            // Spans about 22 orders of magnitude, far more than 256 bins can cover
+            values[i] = Math.pow(10, -6 + 22.0 * i / values.length);
+            sketch.add(values[i]);
+        }
+
+        assertTrue(sketch.getBinCount() <= 256);
+        assertEquals(values.length, sketch.getCount());
+
+        // Only low quantiles are affected by collapsing the lowest bins
+        Arrays.sort(values);
+        for (double quantile : new double[] {0.9, 0.95, 0.99, 1.0}) {
+            double expected = values[(int) (quantile * (values.length - 1))];
+            assertEquals(expected, sketch.getQuantile(quantile), expected * 0.01);
+        }
+    }
+
+    @Test
+    void testZeroAndEmpty() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+
+        sketch.add(0);
+        sketch.add(-1);
+        sketch.add(10);
+        assertEquals(2, sketch.getZeroCount());
+        assertEquals(0.0, sketch.getQuantile(0.5));
+        assertEquals(10, sketch.getQuantile(1.0), 10 * 0.01);
+        assertEquals(1, sketch.getBins().size());
+    }
+
+    private static void assertQuantiles(double[] values, QuantileSketch sketch, double relativeAccuracy) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double quantile : QUANTILES) {
+            double expected = sorted[(int) (quantile * (sorted.length - 1))];
+            double actual = sketch.getQuantile(quantile);
+            assertEquals(expected, actual, expected * relativeAccuracy, "Quantile " + quantile);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.apitally.common.dto.Requests;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RequestCounterTest {
+    private RequestCounter requestCounter;
+
+    @BeforeEach
+    void setUp() {
+        requestCounter = new RequestCounter();
+    }
+
+    @Test
+    void testGetAndResetRequests() {
+        requestCounter.addRequest("tester", "get", "/items", 200, 105, 1500, 3200);
+        requestCounter.addRequest("tester", "GET", "/items", 200, 112, 500, -1);
+        requestCounter.addRequest("", "GET", "/items", 200, 5, -1, 100);
+        requestCounter.addRequest("", "POST", "/items", 201, 20, 100, 0);
+
+        List<Requests> requests = requestCounter.getAndResetRequests();
+        assertEquals(3, requests.size());
+
+        Requests item = findRequests(requests, "tester", "GET", 200);
+        assertEquals("/items", item.getPath());
+        assertEquals(2, item.getRequestCount());
+        assertEquals(2000, item.getRequestSizeSum());
+        assertEquals(3200, item.getResponseSizeSum());
+        assertEquals(Map.of(100, 1, 110, 1), item.getResponseTimes());
+        assertEquals(Map.of(0, 1, 1, 1), item.getRequestSizes());
+        assertEquals(Map.of(3, 1), item.getResponseSizes());
+
+        item = findRequests(requests, null, "GET", 200);
+        assertEquals(1, item.getRequestCount());
+        assertEquals(0, item.getRequestSizeSum());
+        assertTrue(item.getRequestSizes().isEmpty());
+        assertEquals(Map.of(0, 1), item.getResponseTimes());
+
+        item = findRequests(requests, null, "POST", 201);
+        assertNull(item.getConsumer());
+        assertEquals(Map.of(0, 1), item.getResponseSizes());
+
+        assertEquals(0, requestCounter.getAndResetRequests().size());
+    }
+
+    @Test
+    void testConcurrentAddRequest() throws InterruptedException {
+        int threadCount = 8;
+        int requestsPerThread = 10_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < requestsPerThread; j++) {
+                    requestCounter.addRequest("", "GET", "/items", 200, j % 100, 10, 2000);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<Requests> requests = requestCounter.getAndResetRequests();
+        assertEquals(1, requests.size());
+        Requests item = requests.get(0);
+        assertEquals(threadCount * requestsPerThread, item.getRequestCount());
+        assertEquals(threadCount * requestsPerThread * 2000L, item.getResponseSizeSum());
+        assertEquals(
+                threadCount * requestsPerThread, (int) item.getResponseSizes().get(2));
+        assertEquals(10, item.getResponseTimes().size());
+    }
+
+    @Test
+    void testNoIncrementsLostDuringReset() throws InterruptedException {
+        int threadCount = 4;
+        int requestsPerThread = 50_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < requestsPerThread; j++) {
+                    requestCounter.addRequest("", "GET", "/items", 200, 10, 100, 100);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        long requestCount = 0;
+        long responseSizeSum = 0;
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            for (Requests item : requestCounter.getAndResetRequests()) {
+                requestCount += item.getRequestCount();
+                responseSizeSum += item.getResponseSizeSum();
+                assertEquals(
+                        item.getRequestCount(), (int) item.getResponseTimes().get(10));
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Requests item : requestCounter.getAndResetRequests()) {
+            requestCount += item.getRequestCount();
+            responseSizeSum += item.getResponseSizeSum();
+        }
+
+        assertEquals((long) threadCount * requestsPerThread, requestCount);
+        assertEquals((long) threadCount * requestsPerThread * 100, responseSizeSum);
+    }
+
+    @Test
+    void testResponseTimeHistogram() {
+        requestCounter.addRequestNanos("", "GET", "/items", 200, 250_000, -1, -1);
+        requestCounter.addRequestNanos("", "GET", "/items", 200, 800_000, -1, -1);
+        requestCounter.addRequestNanos("", "GET", "/items", 200, 1_000_000_000L, -1, -1);
+        assertNull(requestCounter.getResponseTimeHistogram("", "GET", "/items", 200));
+
+        List<Requests> requests = requestCounter.getAndResetRequests();
+        assertEquals(Map.of(0, 2, 1000, 1), requests.get(0).getResponseTimes());
+
+        // Histogram of the last completed interval is kept at full precision
+        LatencyHistogram histogram = requestCounter.getResponseTimeHistogram("", "GET", "/items", 200);
+        assertEquals(3, histogram.getTotalCount());
+        assertEquals(250, histogram.getValueAtPercentile(0), 250 / 32.0);
+        assertEquals(800, histogram.getValueAtPercentile(50), 800 / 32.0);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100), 1_000_000 / 32.0);
+        assertNull(requestCounter.getResponseTimeHistogram("", "GET", "/other", 200));
+    }
+
+    @Test
+    void testKeyBudget() {
+        requestCounter = new RequestCounter(2, LatencyHistogram.DEFAULT_PRECISION_BITS);
+        requestCounter.addRequest("", "GET", "/items", 200, 10, -1, -1);
+        requestCounter.addRequest("", "GET", "/items/{id}", 200, 10, -1, -1);
+        requestCounter.addRequest("", "GET", "/items", 200, 10, -1, -1);
+        for (int i = 0; i < 100; i++) {
+            requestCounter.addRequest("consumer-" + i, "GET", null, 404, 10, -1, -1);
+        }
+        requestCounter.addRequest("consumer-1", "POST", "/items", 201, 10, -1, -1);
+        assertEquals(101, requestCounter.getFoldedRequestCount());
+
+        List<Requests> requests = requestCounter.getAndResetRequests();
+        assertEquals(4, requests.size());
+        assertEquals(2, findRequests(requests, null, "GET", 200).getRequestCount());
+        Requests overflow = findRequests(requests, RequestCounter.OVERFLOW_KEY_PART, "GET", 404);
+        assertEquals(RequestCounter.OVERFLOW_KEY_PART, overflow.getPath());
+        assertEquals(100, overflow.getRequestCount());
+        assertEquals(
+                1,
+                findRequests(requests, RequestCounter.OVERFLOW_KEY_PART, "POST", 201)
+                        .getRequestCount());
+
+        // Budget is reset with every sync interval
+        requestCounter.addRequest("consumer-1", "GET", null, 404, 10, -1, -1);
+        requests = requestCounter.getAndResetRequests();
+        assertEquals("consumer-1", requests.get(0).getConsumer());
+        assertEquals("null", requests.get(0).getPath());
+        assertEquals(101, requestCounter.getFoldedRequestCount());
+    }
+
+    @Test
+    void testKeyBudgetAcrossThreads() throws InterruptedException {
+        requestCounter = new RequestCounter(10, LatencyHistogram.DEFAULT_PRECISION_BITS);
+        int threadCount = 4;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    requestCounter.addRequest("", "GET", "/items/" + (j % 100), 200, 10, -1, -1);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Keys admitted by one thread are counted under their own key by all threads
+        List<Requests> requests = requestCounter.getAndResetRequests();
+        assertEquals(11, requests.size());
+        int requestCount = 0;
+        for (Requests item : requests) {
+            requestCount += item.getRequestCount();
+            if (!RequestCounter.OVERFLOW_KEY_PART.equals(item.getPath())) {
+                assertEquals(threadCount * 10, item.getRequestCount());
+            }
+        }
+        assertEquals(threadCount * 1000, requestCount);
+        assertEquals(threadCount * 900, requestCounter.getFoldedRequestCount());
+    }
+
+    @Test
+    void testKeyBudgetIsGlobalAcrossThreads() throws InterruptedException {
+        int maxKeys = 100;
+        int threadCount = 8;
+        int keysPerThread = 200;
+        requestCounter = new RequestCounter(maxKeys, LatencyHistogram.DEFAULT_PRECISION_BITS);
+        for (int round = 0; round < 20; round++) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                String prefix = "/threads/" + i + "/";
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < keysPerThread; j++) {
+                        requestCounter.addRequest("", "GET", prefix + j, 200, 10, -1, -1);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // Threads record distinct keys, and only the budget is admitted across all of them
+            List<Requests> requests = requestCounter.getAndResetRequests();
+            long admittedKeys = requests.stream()
+                    .filter(r -> !RequestCounter.OVERFLOW_KEY_PART.equals(r.getPath()))
+                    .count();
+            assertEquals(maxKeys, admittedKeys);
+            Requests overflow = findRequests(requests, RequestCounter.OVERFLOW_KEY_PART, "GET", 200);
+            assertEquals(threadCount * keysPerThread - maxKeys, overflow.getRequestCount());
+        }
+    }
+
+    @Test
+    void testQuantileSketches() {
+        QuantileSketchRollups rollups = new QuantileSketchRollups();
+        requestCounter.enableQuantileSketches(rollups);
+        for (int i = 1; i <= 1000; i++) {
+            requestCounter.addRequest("", "GET", "/items", 200, i, -1, -1);
+        }
+        requestCounter.getAndResetRequests();
+        for (int i = 1; i <= 1000; i++) {
+            requestCounter.addRequest("", "GET", "/items", 200, 1000 + i, -1, -1);
+        }
+        requestCounter.getAndResetRequests();
+
+        assertEquals(1000, rollups.getQuantile("", "GET", "/items", 200, 0.5), 1000 * 0.01);
+        assertEquals(1980, rollups.getQuantile("", "GET", "/items", 200, 0.99), 1980 * 0.01);
+        assertEquals(
+                2000,
+                rollups.getSketch("", "GET", "/items", 200, 0, Long.MAX_VALUE).getCount());
+    }
+
+    private static Requests findRequests(List<Requests> requests, String consumer, String method, int statusCode) {
+        return requests.stream()
+                .filter(r -> (consumer == null ? r.getConsumer() == null : consumer.equals(r.getConsumer()))
+                        && r.getMethod().equals(method)
+                        && r.getStatusCode() == statusCode)
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,94 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.apitally.common.dto.ExceptionDto;
+import io.apitally.common.dto.Header;
+import io.apitally.common.dto.LogRecord;
+import io.apitally.common.dto.Request;
+import io.apitally.common.dto.RequestLogItem;
+import io.apitally.common.dto.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RequestLogItemWriterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testWrite() throws IOException {
+        RequestLogItem item = RequestLogItem.of(
+                new Request(
+                        1718000000.5,
+                        "",
+                        "POST",
+                        "/items",
+                        "http://test/items?page=1",
+                        new Header[] {new Header("Content-Type", "application/json")},
+                        13L,
+                        "{\"name\": \"\u00e4\"}".getBytes(StandardCharsets.UTF_8)),
+                new Response(201, 0.25, new Header[0], null, new byte[0]),
+                new IllegalStateException("test"),
+                List.of(new LogRecord(1718000000.6, "test.Logger", "INFO", "Test log message")));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (RequestLogItemWriter writer = new RequestLogItemWriter(objectMapper.getFactory(), outputStream)) {
+            writer.write(item);
+            writer.write(item);
+        }
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(3, lines.length);
+        assertEquals(lines[0], lines[1]);
+        assertEquals("", lines[2]);
+
+        JsonNode node = objectMapper.readTree(lines[0]);
+        assertEquals(item.getUuid(), node.get("uuid").asText());
+
+        // Same values as when serializing the DTOs with the object mapper, but without empty ones
+        JsonNode request = node.get("request");
+        JsonNode expectedRequest = objectMapper.valueToTree(item.getRequest());
+        assertFalse(request.has("consumer"));
+        for (String field : List.of("timestamp", "method", "path", "url", "headers", "size", "body")) {
+            assertEquals(
+                    expectedRequest.get(field).toString(), request.get(field).toString(), field);
+        }
+        assertEquals(7, request.size());
+
+        JsonNode response = node.get("response");
+        assertEquals(201, response.get("statusCode").asInt());
+        assertEquals(0.25, response.get("responseTime").asDouble());
+        assertEquals(2, response.size());
+
+        assertEquals(objectMapper.valueToTree(item.getException()), node.get("exception"));
+        assertEquals(objectMapper.valueToTree(item.getLogs()), node.get("logs"));
+        assertEquals("IllegalStateException", node.get("exception").get("type").asText());
+
+        // Exception details are rendered once
+        assertSame(item.getException(), item.getException());
+    }
+
+    @Test
+    void testWriteWithExceptionDto() throws IOException {
+        ExceptionDto exception = new ExceptionDto(new IllegalStateException("test"));
+        RequestLogItem item = new RequestLogItem(
+                new Request(1718000000.5, "", "GET", "/items", "http://test/items", new Header[0], null, null),
+                new Response(200, 0.25, new Header[0], null, null),
+                exception,
+                null);
+        assertSame(exception, item.getException());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (RequestLogItemWriter writer = new RequestLogItemWriter(objectMapper.getFactory(), outputStream)) {
+            writer.write(item);
+        }
+        JsonNode node = objectMapper.readTree(outputStream.toString(StandardCharsets.UTF_8));
+        assertEquals(objectMapper.valueToTree(exception), node.get("exception"));
+    }
+}
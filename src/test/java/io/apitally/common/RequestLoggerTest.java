@@ -9,6 +9,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.apitally.common.dto.Header;
 import io.apitally.common.dto.LogRecord;
+import io.apitally.common.dto.Path;
 import io.apitally.common.dto.Request;
 import io.apitally.common.dto.Response;
 import java.io.IOException;
@@ -75,8 +76,9 @@ public class RequestLoggerTest {
         assertFalse(jsonNode.get("request").has("body"));
         assertEquals(200, jsonNode.get("response").get("statusCode").asInt());
         assertEquals(0.123, jsonNode.get("response").get("responseTime").asDouble(), 0.001);
+        // Without any field to mask, the body is logged as is
         assertEquals(
-                "{\"items\":[]}",
+                "{\"items\": []}",
                 new String(Base64.getDecoder()
                         .decode(jsonNode.get("response").get("body").asText())));
 
@@ -196,6 +198,65 @@ public class RequestLoggerTest {
         assertEquals(0, items.length);
     }
 
+    @Test
+    void testExcludeBasedOnRoute() {
+        RouteRegistry routes = new RouteRegistry(List.of(new Path("GET", "/healthz"), new Path("GET", "/items")));
+        requestLogger.setRouteRegistry(routes);
+
+        assertTrue(requestLogger.isRouteExcluded(routes.getRouteId("GET", "/healthz")));
+        assertFalse(requestLogger.isRouteExcluded(routes.getRouteId("GET", "/items")));
+        assertFalse(requestLogger.isRouteExcluded(RouteRegistry.UNKNOWN));
+
+        Request request = new Request(
+                System.currentTimeMillis() / 1000.0,
+                null,
+                "GET",
+                "/healthz",
+                "http://test/healthz",
+                new Header[0],
+                0L,
+                new byte[0]);
+        Response response = new Response(200, 0.123, new Header[0], 17L, "{\"healthy\": true}".getBytes());
+
+        requestLogger.logRequest(request, response, null, null);
+
+        JsonNode[] items = getLoggedItems(requestLogger);
+        assertEquals(0, items.length);
+    }
+
+    @Test
+    void testExcludeBasedOnUrlWithoutPath() {
+        Request request = new Request(
+                System.currentTimeMillis() / 1000.0,
+                null,
+                "GET",
+                null,
+                "http://test/healthz?probe=1",
+                new Header[0],
+                0L,
+                new byte[0]);
+        Response response = new Response(200, 0.123, new Header[0], 0L, new byte[0]);
+
+        requestLogger.logRequest(request, response, null, null);
+
+        JsonNode[] items = getLoggedItems(requestLogger);
+        assertEquals(0, items.length);
+
+        assertEquals("/items/1", RequestLogger.getPathFromUrl("https://test:8080/items/1?q=1#top"));
+        assertEquals("/items", RequestLogger.getPathFromUrl("/items"));
+        assertEquals("", RequestLogger.getPathFromUrl("http://test"));
+        assertEquals("", RequestLogger.getPathFromUrl(null));
+    }
+
+    @Test
+    void testDefaultPatternsMatchedInLinearTime() {
+        for (PatternMatcher matcher : requestLogger.getPatternMatchers().values()) {
+            assertTrue(
+                    matcher.getFallbackPatterns().isEmpty(),
+                    matcher.getFallbackPatterns().toString());
+        }
+    }
+
     @Test
     void testExcludeBasedOnUserAgent() {
         Header[] requestHeaders = new Header[] {
@@ -209,6 +270,13 @@ public class RequestLoggerTest {
 
         JsonNode[] items = getLoggedItems(requestLogger);
         assertEquals(0, items.length);
+
+        assertTrue(requestLogger.isUserAgentExcluded("ELB-HealthChecker/2.0"));
+        assertTrue(requestLogger.isUserAgentExcluded("kube-probe/1.29"));
+        assertFalse(requestLogger.isUserAgentExcluded("Mozilla/5.0"));
+        assertFalse(requestLogger.isUserAgentExcluded(null));
+        assertTrue(requestLogger.isPathExcluded("/api/healthz"));
+        assertFalse(requestLogger.isPathExcluded("/items"));
     }
 
     @Test
@@ -331,6 +399,41 @@ public class RequestLoggerTest {
         assertEquals("<masked>", responseBody);
     }
 
+    @Test
+    void testLargeBodies() {
+        requestLoggingConfig.setBodyTruncationEnabled(true);
+        requestLogger = new RequestLogger(requestLoggingConfig);
+
+        byte[] textBody = "a".repeat(RequestLogger.MAX_BODY_SIZE + 1).getBytes();
+        byte[] jsonBody = ("[" + "1,".repeat(RequestLogger.MAX_BODY_SIZE / 2) + "1]").getBytes();
+        Request request = new Request(
+                System.currentTimeMillis() / 1000.0,
+                null,
+                "POST",
+                "/items",
+                "http://test/items",
+                new Header[] {new Header("Content-Type", "text/plain")},
+                (long) textBody.length,
+                textBody);
+        Response response = new Response(
+                200,
+                0.1,
+                new Header[] {new Header("Content-Type", "application/json")},
+                (long) jsonBody.length,
+                jsonBody);
+
+        requestLogger.logRequest(request, response, null, null);
+
+        JsonNode[] items = getLoggedItems(requestLogger);
+        assertEquals(1, items.length);
+        byte[] requestBody =
+                Base64.getDecoder().decode(items[0].get("request").get("body").asText());
+        byte[] responseBody =
+                Base64.getDecoder().decode(items[0].get("response").get("body").asText());
+        assertEquals(RequestLogger.MAX_BODY_SIZE, requestBody.length);
+        assertEquals("<body too large>", new String(responseBody));
+    }
+
     @Test
     void testMaskBodyFields() {
         requestLoggingConfig.setEnabled(true);
@@ -403,6 +506,82 @@ public class RequestLoggerTest {
         assertEquals("success", respBody.get("status").asText());
     }
 
+    @Test
+    void testOverflowDropOldest() {
+        requestLoggingConfig.setPendingWritesCapacity(2);
+        requestLogger = new RequestLogger(requestLoggingConfig);
+
+        logRequests(10);
+
+        // The background writer may have drained some requests in between, so only the newest is
+        // guaranteed to be kept
+        JsonNode[] items = getLoggedItems(requestLogger);
+        assertEquals(10, items.length + requestLogger.getDroppedOldestCount());
+        assertEquals(
+                "/items/9", items[items.length - 1].get("request").get("path").asText());
+        assertEquals(0, requestLogger.getDroppedNewestCount());
+    }
+
+    @Test
+    void testOverflowDropNewest() {
+        requestLoggingConfig.setPendingWritesCapacity(2);
+        requestLoggingConfig.setOverflowPolicy(RequestLoggingConfig.OverflowPolicy.DROP_NEWEST);
+        requestLogger = new RequestLogger(requestLoggingConfig);
+
+        logRequests(10);
+
+        JsonNode[] items = getLoggedItems(requestLogger);
+        assertEquals(10, items.length + requestLogger.getDroppedNewestCount());
+        assertTrue(items.length >= 2);
+        // The oldest requests are always kept, later ones only if the background writer drained the
+        // buffer in between
+        int previous = -1;
+        for (JsonNode item : items) {
+            int index =
+                    Integer.parseInt(item.get("request").get("path").asText().substring("/items/".length()));
+            assertTrue(index > previous);
+            previous = index;
+        }
+        assertEquals("/items/0", items[0].get("request").get("path").asText());
+        assertEquals("/items/1", items[1].get("request").get("path").asText());
+        assertEquals(0, requestLogger.getDroppedOldestCount());
+    }
+
+    @Test
+    void testWriterWakesUpAtThreshold() throws IOException, InterruptedException {
+        requestLoggingConfig.setPendingWritesCapacity(10);
+        requestLogger = new RequestLogger(requestLoggingConfig);
+        Thread.sleep(100); // Let the writer do its first regular run
+
+        // Reaching half the capacity wakes up the writer before its next regular run
+        logRequests(5);
+        TempGzipFile logFile = null;
+        long deadline = System.currentTimeMillis() + 500;
+        while (logFile == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            requestLogger.rotateFile();
+            logFile = requestLogger.getFile();
+        }
+        assertNotNull(logFile);
+        assertEquals(5, logFile.readDecompressedLines().size());
+    }
+
+    private void logRequests(int count) {
+        for (int i = 0; i < count; i++) {
+            Request request = new Request(
+                    System.currentTimeMillis() / 1000.0,
+                    null,
+                    "GET",
+                    "/items/" + i,
+                    "http://test/items/" + i,
+                    new Header[0],
+                    0L,
+                    new byte[0]);
+            Response response = new Response(200, 0.1, new Header[0], 0L, new byte[0]);
+            requestLogger.logRequest(request, response, null, null);
+        }
+    }
+
     private JsonNode[] getLoggedItems(RequestLogger requestLogger) {
         requestLogger.maintain();
         requestLogger.rotateFile();
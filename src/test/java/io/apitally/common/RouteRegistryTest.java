@@ -0,0 +1,33 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import io.apitally.common.dto.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RouteRegistryTest {
+
+    @Test
+    void testRouteIds() {
+        String itemsPattern = "/items";
+        RouteRegistry routes = new RouteRegistry(List.of(
+                new Path("GET", itemsPattern),
+                new Path("POST", itemsPattern),
+                new Path("GET", "/items/{id}"),
+                new Path("GET", "/items")));
+
+        assertEquals(3, routes.getRouteCount());
+        assertEquals(0, routes.getRouteId("GET", itemsPattern));
+        assertEquals(1, routes.getRouteId("post", itemsPattern));
+        assertEquals(2, routes.getRouteId("GET", new String("/items/{id}")));
+        assertEquals(RouteRegistry.UNKNOWN, routes.getRouteId("DELETE", itemsPattern));
+        assertEquals(RouteRegistry.UNKNOWN, routes.getRouteId("GET", "/other"));
+        assertEquals(RouteRegistry.UNKNOWN, routes.getRouteId("GET", null));
+
+        // Equal but not identical pattern strings resolve to the registered instance
+        assertSame(itemsPattern, routes.getPath(routes.getRouteId("GET", new String(itemsPattern))));
+        assertEquals("POST", routes.getMethod(1));
+    }
+}
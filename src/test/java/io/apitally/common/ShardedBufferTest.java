@@ -0,0 +1,60 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class ShardedBufferTest {
+
+    @Test
+    void testDrainMergesAllShards() throws InterruptedException {
+        ShardedBuffer<long[]> buffer = new ShardedBuffer<>(() -> new long[1], data -> data[0] = 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    ShardedBuffer.Shard<long[]> shard = buffer.shard();
+                    shard.enter()[0]++;
+                    shard.exit();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        AtomicLong total = new AtomicLong();
+        buffer.drain(data -> total.addAndGet(data[0]));
+        assertEquals(4000, total.get());
+
+        total.set(0);
+        buffer.drain(data -> total.addAndGet(data[0]));
+        assertEquals(0, total.get());
+    }
+
+    @Test
+    void testShardsOfTerminatedThreadsAreDropped() throws InterruptedException {
+        ShardedBuffer<long[]> buffer = new ShardedBuffer<>(() -> new long[1], data -> data[0] = 0);
+        int sharedShardCount = buffer.getShardCount();
+        for (int i = 0; i < 10; i++) {
+            Thread thread = new Thread(() -> {
+                ShardedBuffer.Shard<long[]> shard = buffer.shard();
+                shard.enter()[0]++;
+                shard.exit();
+            });
+            thread.start();
+            thread.join();
+        }
+        assertEquals(sharedShardCount + 10, buffer.getShardCount());
+
+        AtomicLong total = new AtomicLong();
+        buffer.drain(data -> total.addAndGet(data[0]));
+        assertEquals(10, total.get());
+        assertEquals(sharedShardCount, buffer.getShardCount());
+    }
+}
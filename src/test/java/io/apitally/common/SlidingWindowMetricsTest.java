@@ -0,0 +1,160 @@
+package io.apitally.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.apitally.common.dto.EndpointMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class SlidingWindowMetricsTest {
+    private AtomicLong now;
+    private SlidingWindowMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(1_000_000);
+        metrics = new SlidingWindowMetrics(now::get);
+    }
+
+    @Test
+    void testWindows() {
+        for (int second = 0; second < 120; second++) {
+            metrics.addRequest("get", "/items", 200, 20_000_000);
+            metrics.addRequest("GET", "/items", second % 10 == 0 ? 500 : 404, 20_000_000);
+            now.incrementAndGet();
+        }
+        metrics.addRequest("GET", "/items", 500, 20_000_000); // current second, not counted yet
+        metrics.addRequest("GET", null, 404, 20_000_000);
+
+        EndpointMetrics oneMinute = metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.ONE_MINUTE);
+        assertEquals(120, oneMinute.getRequestCount());
+        assertEquals(2.0, oneMinute.getRequestsPerSecond());
+        assertEquals(6, oneMinute.getServerErrorCount());
+        assertEquals(54, oneMinute.getClientErrorCount());
+        assertEquals(0.05, oneMinute.getErrorRate(), 1e-9);
+
+        EndpointMetrics fiveMinutes = metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.FIVE_MINUTES);
+        assertEquals(240, fiveMinutes.getRequestCount());
+        assertEquals(0.8, fiveMinutes.getRequestsPerSecond());
+
+        assertNull(metrics.getMetrics("POST", "/items", SlidingWindowMetrics.Window.ONE_MINUTE));
+        assertEquals(
+                1, metrics.getMetrics(SlidingWindowMetrics.Window.ONE_MINUTE).size());
+
+        // Buckets older than the window are not counted once the ring wraps around
+        now.addAndGet(400);
+        metrics.addRequest("GET", "/items", 200, 20_000_000);
+        now.addAndGet(10);
+        fiveMinutes = metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.FIVE_MINUTES);
+        assertEquals(1, fiveMinutes.getRequestCount());
+    }
+
+    @Test
+    void testBucketsResetInPlace() {
+        metrics.addRequest("GET", "/items", 500, 20_000_000);
+        metrics.addRequest("GET", "/items", 500, 20_000_000);
+
+        // Lands on the same buckets of both rings, of 61 one-second and 31 ten-second buckets
+        now.addAndGet(61 * 310);
+        metrics.addRequest("GET", "/items", 200, 1_000_000);
+        now.addAndGet(10);
+
+        EndpointMetrics oneMinute = metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.ONE_MINUTE);
+        assertEquals(1, oneMinute.getRequestCount());
+        assertEquals(0, oneMinute.getServerErrorCount());
+        assertEquals(1, oneMinute.getResponseTimeP99(), 0.125);
+        EndpointMetrics fiveMinutes = metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.FIVE_MINUTES);
+        assertEquals(1, fiveMinutes.getRequestCount());
+        assertEquals(0, fiveMinutes.getServerErrorCount());
+    }
+
+    @Test
+    @Timeout(10)
+    void testConcurrentRequestsAcrossBucketReset() throws InterruptedException {
+        // Each thread reads its own clock, so threads can record requests of different seconds at once
+        ThreadLocal<Long> threadNow = ThreadLocal.withInitial(() -> 1_000_000L);
+        SlidingWindowMetrics concurrentMetrics = new SlidingWindowMetrics(threadNow::get);
+        int threadsPerSecond = 4;
+        int requestsPerThread = 20_000;
+
+        for (int round = 0; round < 5; round++) {
+            // Both seconds land on the same bucket of the one-minute ring, of 61 one-second buckets
+            long oldSecond = 1_000_000L + 61 * round;
+            long newSecond = oldSecond + 61;
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 2 * threadsPerSecond; i++) {
+                long second = i % 2 == 0 ? oldSecond : newSecond;
+                threads.add(new Thread(() -> {
+                    threadNow.set(second);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        concurrentMetrics.addRequest("GET", "/items", 200, 20_000_000);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // Requests of the old second are dropped or cleared, but never counted for the new second
+            threadNow.set(newSecond + 1);
+            EndpointMetrics oneMinute =
+                    concurrentMetrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.ONE_MINUTE);
+            assertEquals(threadsPerSecond * requestsPerThread, oneMinute.getRequestCount());
+        }
+    }
+
+    @Test
+    void testFiveMinuteWindowCountsCompleteTenSecondBuckets() {
+        metrics.addRequest("GET", "/items", 200, 20_000_000);
+        now.addAndGet(9);
+        assertEquals(
+                0,
+                metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.FIVE_MINUTES)
+                        .getRequestCount());
+        assertEquals(
+                1,
+                metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.ONE_MINUTE)
+                        .getRequestCount());
+        now.incrementAndGet();
+        assertEquals(
+                1,
+                metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.FIVE_MINUTES)
+                        .getRequestCount());
+    }
+
+    @Test
+    void testPercentiles() {
+        for (int i = 1; i <= 100; i++) {
+            metrics.addRequest("GET", "/items", 200, i * 1_000_000L);
+        }
+        now.incrementAndGet();
+
+        EndpointMetrics item = metrics.getMetrics("GET", "/items", SlidingWindowMetrics.Window.ONE_MINUTE);
+        assertEquals(50, item.getResponseTimeP50(), 50 * 0.125);
+        assertEquals(95, item.getResponseTimeP95(), 95 * 0.125);
+        assertEquals(99, item.getResponseTimeP99(), 99 * 0.125);
+    }
+
+    @Test
+    void testBins() {
+        for (long micros : new long[] {0, 1, 3, 4, 7, 100, 12_345, 999_999, 60_000_000}) {
+            double midpoint = SlidingWindowMetrics.getBinMidpointMillis(SlidingWindowMetrics.getBin(micros));
+            assertEquals(micros / 1000.0, midpoint, Math.max(micros / 1000.0 * 0.125, 0.001));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.apitally.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.apitally.common.ApitallyClient;
+import io.apitally.common.RequestLoggingConfig;
+import io.apitally.common.RouteRegistry;
+import io.apitally.common.SlidingWindowMetrics;
+import io.apitally.common.dto.Path;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+class ApitallyFilterAllocationTest {
+    // Allowed on top of what the mock request and OncePerRequestFilter allocate without this filter
+    private static final long MAX_BYTES_PER_REQUEST = 8;
+    private static final int REQUEST_COUNT = 100_000;
+
+    private final FilterChain chain =
+            (request, response) -> request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/items/{id}");
+
+    private ApitallyClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = new ApitallyClient("00000000-0000-0000-0000-000000000000", "test", new RequestLoggingConfig());
+        client.setRouteRegistry(new RouteRegistry(List.of(new Path("GET", "/items/{id}"))));
+        client.enableSlidingWindowMetrics(new SlidingWindowMetrics());
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    void testFilterWithoutRequestLoggingDoesNotAllocate() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/items/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        // The mock request allocates an entry for the attribute OncePerRequestFilter sets per request
+        OncePerRequestFilter passThroughFilter = new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(
+                    HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+                    throws ServletException, IOException {
+                filterChain.doFilter(request, response);
+            }
+
+            @Override
+            protected String getAlreadyFilteredAttributeName() {
+                return "passThroughFilter.FILTERED";
+            }
+        };
+        long baseline = measureBytesPerRequest(passThroughFilter, request, response);
+
+        long allocated = measureBytesPerRequest(new ApitallyFilter(client), request, response);
+
+        assertTrue(
+                allocated - baseline <= MAX_BYTES_PER_REQUEST,
+                "Allocated " + allocated + " bytes per request, " + baseline + " without the filter");
+        assertEquals(
+                2 * REQUEST_COUNT,
+                client.requestCounter.getAndResetRequests().get(0).getRequestCount());
+    }
+
+    private long measureBytesPerRequest(
+            OncePerRequestFilter filter, MockHttpServletRequest request, MockHttpServletResponse response)
+            throws ServletException, IOException {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            filter.doFilter(request, response, chain);
+        }
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            filter.doFilter(request, response, chain);
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / REQUEST_COUNT;
+    }
+}
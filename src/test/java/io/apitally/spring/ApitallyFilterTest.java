@@ -16,6 +16,7 @@ import io.apitally.common.dto.ServerErrors;
 import io.apitally.common.dto.ValidationErrors;
 import io.apitally.spring.app.TestApplication;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.core.Ordered;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ContextConfiguration;
@@ -85,6 +87,7 @@ class ApitallyFilterTest {
         apitallyClient.serverErrorCounter.getAndResetServerErrors();
         apitallyClient.consumerRegistry.reset();
         apitallyClient.requestLogger.getConfig().setEnabled(true);
+        apitallyClient.setRouteRegistry(ApitallyUtils.getRouteRegistry(requestMappingHandlerMapping));
     }
 
     @Test
@@ -221,7 +224,7 @@ class ApitallyFilterTest {
     @Test
     void testGetPaths() {
         List<Path> paths = ApitallyUtils.getPaths(requestMappingHandlerMapping);
-        assertEquals(6, paths.size());
+        assertEquals(10, paths.size());
         assertTrue(paths.stream()
                 .anyMatch(p -> p.getMethod().equals("GET") && p.getPath().equals("/items")));
         assertTrue(paths.stream()
@@ -287,6 +290,104 @@ class ApitallyFilterTest {
         assertTrue(requestBody.contains("bob"));
     }
 
+    @Test
+    void testRequestLoggerExcludesBeforeDispatch() {
+        apitallyClient.requestLogger.getConfig().setEnabled(true);
+        apitallyClient.requestLogger.getConfig().setResponseBodyIncluded(true);
+        apitallyClient.requestLogger.clear();
+        apitallyClient.requestCounter.getAndResetRequests();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("User-Agent", "kube-probe/1.29");
+        ResponseEntity<String> response =
+                restTemplate.exchange("/items", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertTrue(response.getStatusCode().is2xxSuccessful());
+        assertTrue(response.getBody().contains("alice"));
+
+        delay(100);
+
+        // Excluded requests are still counted, but not logged
+        assertEquals(0, getLoggedItems(apitallyClient.requestLogger).length);
+        List<Requests> requests = apitallyClient.requestCounter.getAndResetRequests();
+        assertEquals(1, requests.size());
+        assertEquals("/items", requests.get(0).getPath());
+    }
+
+    @Test
+    void testRequestLoggerExcludesByRoute() {
+        apitallyClient.requestLogger.getConfig().setEnabled(true);
+        apitallyClient.requestLogger.getConfig().setResponseBodyIncluded(true);
+        apitallyClient.requestLogger.clear();
+        apitallyClient.requestCounter.getAndResetRequests();
+
+        // Path matches the exclusion pattern /ping$, but the route /users/{name} doesn't
+        ResponseEntity<String> response = restTemplate.getForEntity("/users/ping", String.class);
+        assertTrue(response.getStatusCode().is2xxSuccessful());
+        response = restTemplate.getForEntity("/healthz", String.class);
+        assertTrue(response.getStatusCode().is2xxSuccessful());
+
+        delay(100);
+
+        JsonNode[] items = getLoggedItems(apitallyClient.requestLogger);
+        assertEquals(1, items.length);
+        assertEquals("/users/{name}", items[0].get("request").get("path").asText());
+        String responseBody = new String(
+                Base64.getDecoder().decode(items[0].get("response").get("body").asText()));
+        assertTrue(responseBody.contains("ping"));
+        assertEquals(2, apitallyClient.requestCounter.getAndResetRequests().size());
+    }
+
+    @Test
+    void testAsyncRequest() {
+        apitallyClient.requestLogger.getConfig().setEnabled(true);
+        apitallyClient.requestLogger.getConfig().setResponseBodyIncluded(true);
+        apitallyClient.requestLogger.clear();
+        apitallyClient.requestCounter.getAndResetRequests();
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/async", String.class);
+        assertTrue(response.getStatusCode().is2xxSuccessful());
+
+        delay(100);
+
+        // Request is recorded once the async response is complete, not when the initial dispatch returns
+        List<Requests> requests = apitallyClient.requestCounter.getAndResetRequests();
+        assertEquals(1, requests.size());
+        assertEquals("/async", requests.get(0).getPath());
+        assertEquals(200, requests.get(0).getStatusCode());
+        assertTrue(requests.get(0).getResponseTimes().keySet().stream().allMatch(t -> t >= 200));
+        assertTrue(requests.get(0).getResponseSizeSum() > 0);
+
+        JsonNode[] items = getLoggedItems(apitallyClient.requestLogger);
+        assertEquals(1, items.length);
+        assertTrue(items[0].get("response").get("responseTime").asDouble() >= 0.2);
+        String responseBody = new String(
+                Base64.getDecoder().decode(items[0].get("response").get("body").asText()));
+        assertTrue(responseBody.contains("bob"));
+    }
+
+    @Test
+    void testAsyncRequestWithWriter() {
+        apitallyClient.requestLogger.getConfig().setEnabled(true);
+        apitallyClient.requestLogger.getConfig().setResponseBodyIncluded(true);
+        apitallyClient.requestLogger.clear();
+        apitallyClient.requestCounter.getAndResetRequests();
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/async/writer", String.class);
+        assertTrue(response.getStatusCode().is2xxSuccessful());
+        assertEquals("hello from Zoë \ud83d\ude00", response.getBody());
+
+        delay(100);
+
+        // Characters written to the writer are captured even though the container flushes them
+        // before the request is recorded
+        JsonNode[] items = getLoggedItems(apitallyClient.requestLogger);
+        assertEquals(1, items.length);
+        String responseBody = new String(
+                Base64.getDecoder().decode(items[0].get("response").get("body").asText()), StandardCharsets.UTF_8);
+        assertEquals("hello from Zoë \ud83d\ude00", responseBody);
+        assertEquals(20, items[0].get("response").get("size").asLong());
+    }
+
     private JsonNode[] getLoggedItems(RequestLogger requestLogger) {
         requestLogger.maintain();
         requestLogger.rotateFile();
@@ -0,0 +1,243 @@
+package io.apitally.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.apitally.common.ApitallyClient;
+import io.apitally.common.RequestLogger;
+import io.apitally.common.TempGzipFile;
+import io.apitally.common.dto.Requests;
+import io.apitally.common.dto.ServerErrors;
+import io.apitally.spring.reactiveapp.ReactiveTestApplication;
+import io.apitally.spring.reactiveapp.ReactiveTestController;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@SpringBootTest(
+        classes = ReactiveTestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.main.web-application-type=reactive", "test.server=netty"})
+class ApitallyReactiveAutoConfigurationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ApitallyClient apitallyClient;
+
+    @Autowired
+    private ApitallyWebFilter apitallyWebFilter;
+
+    @BeforeEach
+    void setUp() {
+        apitallyClient.stopSync();
+        awaitRunningSync();
+        apitallyClient.requestCounter.getAndResetRequests();
+        apitallyClient.serverErrorCounter.getAndResetServerErrors();
+        apitallyClient.requestLogger.clear();
+    }
+
+    @Test
+    void testAutoConfiguration() {
+        assertNotNull(apitallyWebFilter);
+        assertTrue(apitallyClient.getRouteRegistry().getRouteId("GET", "/items/{id}") >= 0);
+        assertTrue(apitallyClient.getRouteRegistry().getRouteId("GET", "/events") >= 0);
+    }
+
+    @Test
+    void testRequestCounterAndLogger() {
+        webTestClient.get().uri("/items/1").exchange().expectStatus().isOk();
+        webTestClient.get().uri("/items/x").exchange().expectStatus().isBadRequest();
+
+        delay(100);
+
+        List<Requests> requests = apitallyClient.requestCounter.getAndResetRequests();
+        assertEquals(2, requests.size());
+        assertTrue(requests.stream()
+                .allMatch(r -> r.getMethod().equals("GET") && r.getPath().equals("/items/{id}")));
+        assertTrue(requests.stream().anyMatch(r -> r.getStatusCode() == 200 && r.getResponseSizeSum() > 0));
+        assertTrue(requests.stream().anyMatch(r -> r.getStatusCode() == 400));
+
+        JsonNode[] items = getLoggedItems(apitallyClient.requestLogger);
+        assertEquals(2, items.length);
+        JsonNode item = items[0].get("response").get("statusCode").asInt() == 200 ? items[0] : items[1];
+        String responseBody = new String(
+                Base64.getDecoder().decode(item.get("response").get("body").asText()));
+        assertTrue(responseBody.contains("bob"));
+    }
+
+    @Test
+    void testExceptionHandledByControllerAdvice() {
+        webTestClient.get().uri("/throw").exchange().expectStatus().is5xxServerError();
+
+        delay(100);
+
+        List<Requests> requests = apitallyClient.requestCounter.getAndResetRequests();
+        assertEquals(1, requests.size());
+        assertEquals(500, requests.get(0).getStatusCode());
+        List<ServerErrors> serverErrors = apitallyClient.serverErrorCounter.getAndResetServerErrors();
+        assertEquals(1, serverErrors.size());
+        assertEquals("TestException", serverErrors.get(0).getType());
+        assertEquals("test", serverErrors.get(0).getMessage());
+        JsonNode[] items = getLoggedItems(apitallyClient.requestLogger);
+        assertEquals(1, items.length);
+        assertEquals("TestException", items[0].get("exception").get("type").asText());
+    }
+
+    @Test
+    void testRequestLoggerExclusion() {
+        webTestClient.get().uri("/healthz").exchange().expectStatus().isOk();
+
+        delay(100);
+
+        // Excluded from logging, but still counted
+        assertEquals(0, getLoggedItems(apitallyClient.requestLogger).length);
+        assertEquals(1, apitallyClient.requestCounter.getAndResetRequests().size());
+    }
+
+    @Test
+    void testZeroCopyResponse() {
+        // File resources are transferred with zero-copy where the server supports it, like Netty does
+        byte[] body = webTestClient
+                .get()
+                .uri("/file")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+        assertEquals(ReactiveTestController.FILE_SIZE, body.length);
+
+        delay(100);
+
+        List<Requests> requests = apitallyClient.requestCounter.getAndResetRequests();
+        assertEquals(1, requests.size());
+        assertEquals("/file", requests.get(0).getPath());
+        assertEquals(ReactiveTestController.FILE_SIZE, requests.get(0).getResponseSizeSum());
+        JsonNode[] items = getLoggedItems(apitallyClient.requestLogger);
+        assertEquals(1, items.length);
+        assertTrue(items[0].get("response").get("body") == null
+                || items[0].get("response").get("body").isNull());
+    }
+
+    @Test
+    void testServerSentEventsCancelledByClient() {
+        // Streams are written with writeAndFlushWith, and the client disconnecting cancels the exchange
+        List<String> events = webTestClient
+                .get()
+                .uri("/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .take(3)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+        assertEquals(List.of("event 0", "event 1", "event 2"), events);
+
+        delay(200);
+
+        // Cancelled after the response was committed, so it has a status code and is recorded
+        List<Requests> requests = apitallyClient.requestCounter.getAndResetRequests();
+        assertEquals(1, requests.size());
+        assertEquals("/events", requests.get(0).getPath());
+        assertEquals(200, requests.get(0).getStatusCode());
+        assertTrue(requests.get(0).getResponseSizeSum() > 0);
+        JsonNode[] items = getLoggedItems(apitallyClient.requestLogger);
+        assertEquals(1, items.length);
+        assertTrue(items[0].get("response").get("body") == null
+                || items[0].get("response").get("body").isNull());
+    }
+
+    @Test
+    void testCancelledBeforeResponse() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.getOutputStream()
+                    .write("GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            delay(200);
+        }
+
+        delay(200);
+
+        // The client disconnected before a response was sent, so there is no status code to record
+        assertEquals(0, apitallyClient.requestCounter.getAndResetRequests().size());
+        assertEquals(0, getLoggedItems(apitallyClient.requestLogger).length);
+    }
+
+    private static JsonNode[] getLoggedItems(RequestLogger requestLogger) {
+        requestLogger.maintain();
+        requestLogger.rotateFile();
+
+        TempGzipFile logFile = requestLogger.getFile();
+        if (logFile == null) {
+            return new JsonNode[0];
+        }
+
+        try {
+            List<String> lines = logFile.readDecompressedLines();
+            JsonNode[] items = new JsonNode[lines.size()];
+            ObjectMapper objectMapper = new ObjectMapper();
+            for (int i = 0; i < lines.size(); i++) {
+                items[i] = objectMapper.readTree(lines.get(i));
+            }
+            return items;
+        } catch (IOException e) {
+            throw new AssertionError("Failed to read gzipped file", e);
+        }
+    }
+
+    /**
+     * Waits for the sync started with the application to finish, as it resets the counters and takes
+     * the log files, and keeps retrying the hub for a few seconds.
+     */
+    private static void awaitRunningSync() {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (System.currentTimeMillis() < deadline && isSyncRunning()) {
+            delay(100);
+        }
+    }
+
+    private static boolean isSyncRunning() {
+        for (Map.Entry<Thread, StackTraceElement[]> entry :
+                Thread.getAllStackTraces().entrySet()) {
+            if (entry.getKey().getName().equals("apitally-sync")) {
+                for (StackTraceElement element : entry.getValue()) {
+                    if (element.getClassName().equals(ApitallyClient.class.getName())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void delay(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
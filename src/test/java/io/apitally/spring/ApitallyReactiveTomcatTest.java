@@ -0,0 +1,11 @@
+package io.apitally.spring;
+
+import io.apitally.spring.reactiveapp.ReactiveTestApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/** Runs the reactive tests on Tomcat, which recycles the response once the exchange is complete. */
+@SpringBootTest(
+        classes = ReactiveTestApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.main.web-application-type=reactive")
+class ApitallyReactiveTomcatTest extends ApitallyReactiveAutoConfigurationTest {}
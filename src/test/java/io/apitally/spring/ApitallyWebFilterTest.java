@@ -0,0 +1,159 @@
+package io.apitally.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.apitally.common.ApitallyClient;
+import io.apitally.common.RequestLogger;
+import io.apitally.common.RequestLoggingConfig;
+import io.apitally.common.RouteRegistry;
+import io.apitally.common.TempGzipFile;
+import io.apitally.common.dto.Path;
+import io.apitally.common.dto.Requests;
+import io.apitally.common.dto.ServerErrors;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class ApitallyWebFilterTest {
+
+    private ApitallyClient client;
+    private ApitallyWebFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        RequestLoggingConfig requestLoggingConfig = new RequestLoggingConfig();
+        requestLoggingConfig.setEnabled(true);
+        requestLoggingConfig.setRequestBodyIncluded(true);
+        requestLoggingConfig.setResponseBodyIncluded(true);
+        client = new ApitallyClient("00000000-0000-0000-0000-000000000000", "test", requestLoggingConfig);
+        client.setRouteRegistry(new RouteRegistry(List.of(
+                new Path("POST", "/items/{id}"), new Path("GET", "/users/{name}"), new Path("GET", "/healthz"))));
+        filter = new ApitallyWebFilter(client);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    void testRequestCounter() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/items/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Flux.just(toDataBuffer("{\"id\": 1, "), toDataBuffer("\"name\": \"bob\"}"))));
+        WebFilterChain chain = ex -> {
+            ex.getAttributes()
+                    .put(
+                            HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE,
+                            PathPatternParser.defaultInstance.parse("/items/{id}"));
+            ex.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return ex.getRequest()
+                    .getBody()
+                    .then(ex.getResponse().writeWith(Flux.just(toDataBuffer("[1, "), toDataBuffer("2]"))));
+        };
+
+        filter.filter(exchange, chain).block();
+
+        List<Requests> requests = client.requestCounter.getAndResetRequests();
+        assertEquals(1, requests.size());
+        assertEquals("POST", requests.get(0).getMethod());
+        assertEquals("/items/{id}", requests.get(0).getPath());
+        assertEquals(200, requests.get(0).getStatusCode());
+        assertEquals(24, requests.get(0).getRequestSizeSum());
+        assertEquals(6, requests.get(0).getResponseSizeSum());
+    }
+
+    @Test
+    void testServerError() {
+        MockServerWebExchange exchange =
+                MockServerWebExchange.from(MockServerHttpRequest.get("/throw").build());
+        WebFilterChain chain = ex -> Mono.error(new IllegalStateException("test"));
+
+        try {
+            filter.filter(exchange, chain).block();
+        } catch (IllegalStateException e) {
+            // Expected, rendered by exception handlers outside of web filters
+        }
+
+        List<Requests> requests = client.requestCounter.getAndResetRequests();
+        assertEquals(1, requests.size());
+        assertEquals(500, requests.get(0).getStatusCode());
+        List<ServerErrors> serverErrors = client.serverErrorCounter.getAndResetServerErrors();
+        assertEquals(1, serverErrors.size());
+        assertTrue(serverErrors.get(0).getMessage().contains("test"));
+    }
+
+    @Test
+    void testRequestLoggerExcludesByRoute() {
+        // Path matches the exclusion pattern /ping$, but the route /users/{name} doesn't
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/users/ping").build());
+        filter.filter(exchange, respondWith("/users/{name}", "{\"name\": \"ping\"}"))
+                .block();
+        exchange =
+                MockServerWebExchange.from(MockServerHttpRequest.get("/healthz").build());
+        filter.filter(exchange, respondWith("/healthz", "{\"status\": \"ok\"}")).block();
+
+        JsonNode[] items = getLoggedItems(client.requestLogger);
+        assertEquals(1, items.length);
+        assertEquals("/users/{name}", items[0].get("request").get("path").asText());
+        String responseBody = new String(
+                Base64.getDecoder().decode(items[0].get("response").get("body").asText()));
+        assertTrue(responseBody.contains("ping"));
+        assertEquals(2, client.requestCounter.getAndResetRequests().size());
+    }
+
+    private static WebFilterChain respondWith(String pattern, String body) {
+        return ex -> {
+            ex.getAttributes()
+                    .put(
+                            HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE,
+                            PathPatternParser.defaultInstance.parse(pattern));
+            ex.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return ex.getResponse().writeWith(Flux.just(toDataBuffer(body)));
+        };
+    }
+
+    private static JsonNode[] getLoggedItems(RequestLogger requestLogger) {
+        requestLogger.maintain();
+        requestLogger.rotateFile();
+
+        TempGzipFile logFile = requestLogger.getFile();
+        if (logFile == null) {
+            return new JsonNode[0];
+        }
+
+        try {
+            List<String> lines = logFile.readDecompressedLines();
+            JsonNode[] items = new JsonNode[lines.size()];
+            ObjectMapper objectMapper = new ObjectMapper();
+            for (int i = 0; i < lines.size(); i++) {
+                items[i] = objectMapper.readTree(lines.get(i));
+            }
+            return items;
+        } catch (IOException e) {
+            throw new AssertionError("Failed to read gzipped file", e);
+        }
+    }
+
+    private static DataBuffer toDataBuffer(String value) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
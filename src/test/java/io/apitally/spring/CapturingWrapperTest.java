@@ -0,0 +1,195 @@
+package io.apitally.spring;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class CapturingWrapperTest {
+
+    @Test
+    void testBodyCapture() {
+        BodyCapture capture = new BodyCapture(4);
+        capture.append('a');
+        capture.append("bcdefgh".getBytes(StandardCharsets.UTF_8), 0, 7);
+        capture.append("ijk".getBytes(StandardCharsets.UTF_8), 1, 2);
+
+        assertEquals(10, capture.getByteCount());
+        assertArrayEquals("abcde".getBytes(StandardCharsets.UTF_8), capture.toByteArray());
+    }
+
+    @Test
+    void testResponseStreamsThroughAndCapturesPrefix() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CapturingResponseWrapper wrapper = new CapturingResponseWrapper(response, 100);
+        wrapper.setContentType("text/plain");
+
+        byte[] body = new byte[10_000];
+        Arrays.fill(body, (byte) 'x');
+        wrapper.getOutputStream().write(body, 0, 5000);
+        // Bytes reach the client as they are written, not only at the end of the request
+        assertEquals(5000, response.getContentAsByteArray().length);
+        wrapper.getOutputStream().write(body, 5000, 5000);
+
+        assertEquals(10_000, response.getContentAsByteArray().length);
+        assertEquals(10_000, wrapper.getByteCount());
+        assertEquals(101, wrapper.getCapturedBody().length);
+        assertThrows(IllegalStateException.class, wrapper::getWriter);
+    }
+
+    @Test
+    void testResponseWriter() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        CapturingResponseWrapper wrapper = new CapturingResponseWrapper(response, 100);
+        wrapper.setContentType("application/json");
+
+        PrintWriter writer = wrapper.getWriter();
+        writer.write("{\"name\": \"Zoë\"}");
+
+        assertEquals("{\"name\": \"Zoë\"}", response.getContentAsString(StandardCharsets.UTF_8));
+        assertEquals(16, wrapper.getByteCount());
+        assertArrayEquals(response.getContentAsByteArray(), wrapper.getCapturedBody());
+        assertThrows(IllegalStateException.class, wrapper::getOutputStream);
+    }
+
+    @Test
+    void testResponseWriterEncodesSurrogatePairsSplitAcrossWrites() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        CapturingResponseWrapper wrapper = new CapturingResponseWrapper(response, 100);
+        wrapper.setContentType("text/plain");
+
+        PrintWriter writer = wrapper.getWriter();
+        writer.write("a\ud83d");
+        // Captured as soon as it is written, without flushing the writer
+        assertArrayEquals("a".getBytes(StandardCharsets.UTF_8), wrapper.getCapturedBody());
+        writer.write('\ude00');
+        writer.write("b");
+
+        assertArrayEquals("a\ud83d\ude00b".getBytes(StandardCharsets.UTF_8), wrapper.getCapturedBody());
+        assertEquals(6, wrapper.getByteCount());
+    }
+
+    @Test
+    void testResponseWriterCountsBeyondCaptureLimit() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        CapturingResponseWrapper wrapper = new CapturingResponseWrapper(response, 10);
+        wrapper.setContentType("text/plain");
+
+        String body = "ä".repeat(1000);
+        wrapper.getWriter().write(body);
+        wrapper.getWriter().write(body);
+
+        assertEquals(4000, response.getContentAsByteArray().length);
+        assertEquals(4000, wrapper.getByteCount());
+        assertEquals(11, wrapper.getCapturedBody().length);
+    }
+
+    @Test
+    void testResponseResetBuffer() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        CapturingResponseWrapper wrapper = new CapturingResponseWrapper(response, 100);
+        wrapper.setContentType("text/plain");
+
+        wrapper.getWriter().write("partial \ud83d");
+        wrapper.resetBuffer();
+        wrapper.getWriter().write("error");
+
+        // The pending high surrogate is dropped with the buffer, rather than captured as a replacement
+        assertEquals(5, wrapper.getByteCount());
+        assertArrayEquals("error".getBytes(StandardCharsets.UTF_8), wrapper.getCapturedBody());
+    }
+
+    @Test
+    void testResponseReset() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CapturingResponseWrapper wrapper = new CapturingResponseWrapper(response, 100);
+        wrapper.setContentType("application/octet-stream");
+
+        wrapper.getWriter().write("partial");
+        wrapper.reset();
+
+        // Content type and the choice between stream and writer are decided anew
+        assertEquals(0, wrapper.getByteCount());
+        wrapper.setContentType("application/json");
+        wrapper.getOutputStream().write("{}".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(wrapper.isCapturing());
+        assertEquals("{}", response.getContentAsString());
+        assertEquals(2, wrapper.getByteCount());
+        assertArrayEquals("{}".getBytes(StandardCharsets.UTF_8), wrapper.getCapturedBody());
+    }
+
+    @Test
+    void testResponseDecidesCaptureOnFirstWrite() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CapturingResponseWrapper wrapper = new CapturingResponseWrapper(response, 100);
+
+        // Content type is commonly set after the output stream was obtained, but before writing
+        wrapper.getOutputStream();
+        wrapper.setContentType("application/octet-stream");
+        wrapper.getOutputStream().write(new byte[1000]);
+        wrapper.setContentType("application/json");
+        wrapper.getOutputStream().write(new byte[1000]);
+
+        assertFalse(wrapper.isCapturing());
+        assertEquals(2000, response.getContentAsByteArray().length);
+        assertEquals(2000, wrapper.getByteCount());
+        assertEquals(0, wrapper.getCapturedBody().length);
+    }
+
+    @Test
+    void testResponseDoesNotCaptureEventStream() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CapturingResponseWrapper wrapper = new CapturingResponseWrapper(response, 100);
+        wrapper.setContentType("text/event-stream");
+
+        wrapper.getWriter().write("data: hello\n\n");
+        wrapper.flushBuffer();
+
+        assertFalse(wrapper.isCapturing());
+        assertEquals("data: hello\n\n", response.getContentAsString());
+        assertEquals(13, wrapper.getByteCount());
+        assertEquals(0, wrapper.getCapturedBody().length);
+    }
+
+    @Test
+    void testRequestCapturesPrefixAsRead() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/items");
+        byte[] body = new byte[1000];
+        Arrays.fill(body, (byte) 'y');
+        request.setContent(body);
+        CapturingRequestWrapper wrapper = new CapturingRequestWrapper(request, 10);
+
+        assertEquals(0, wrapper.getCapturedBody().length);
+        byte[] read = wrapper.getInputStream().readAllBytes();
+
+        assertArrayEquals(body, read);
+        assertEquals(1000, wrapper.getByteCount());
+        assertEquals(11, wrapper.getCapturedBody().length);
+    }
+
+    @Test
+    void testRequestReader() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/items");
+        request.setCharacterEncoding("UTF-8");
+        request.setContent("hello\nworld".getBytes(StandardCharsets.UTF_8));
+        CapturingRequestWrapper wrapper = new CapturingRequestWrapper(request, 100);
+
+        assertEquals("hello", wrapper.getReader().readLine());
+        assertEquals("world", wrapper.getReader().readLine());
+        assertArrayEquals("hello\nworld".getBytes(StandardCharsets.UTF_8), wrapper.getCapturedBody());
+    }
+}
@@ -0,0 +1,157 @@
+package io.apitally.spring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class CountingWrapperTest {
+
+    @Test
+    void testChunkedOutputStream() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CountingResponseWrapper wrapper = new CountingResponseWrapper(response);
+
+        byte[] chunk = new byte[1000];
+        for (int i = 0; i < 10; i++) {
+            wrapper.getOutputStream().write(chunk);
+            wrapper.flushBuffer();
+        }
+        wrapper.getOutputStream().write('x');
+
+        assertEquals(10_001, response.getContentAsByteArray().length);
+        assertEquals(10_001, wrapper.getByteCount());
+    }
+
+    @Test
+    void testChunkedWriterUtf8() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+        CountingResponseWrapper wrapper = new CountingResponseWrapper(response);
+
+        PrintWriter writer = wrapper.getWriter();
+        for (int i = 0; i < 100; i++) {
+            writer.print("{\"name\": \"Zoë\", \"emoji\": \"😀\", \"cjk\": \"日本\"}\n");
+            writer.flush();
+        }
+        wrapper.flushBuffer();
+
+        assertEquals(response.getContentAsByteArray().length, wrapper.getByteCount());
+        assertEquals(100 * 51, wrapper.getByteCount());
+    }
+
+    @Test
+    void testWriterDefaultCharset() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CountingResponseWrapper wrapper = new CountingResponseWrapper(response);
+
+        wrapper.getWriter().write("héllo");
+        wrapper.flushBuffer();
+
+        assertEquals(response.getContentAsByteArray().length, wrapper.getByteCount());
+        assertEquals(5, wrapper.getByteCount());
+    }
+
+    @Test
+    void testCountingWriter() throws IOException {
+        String text = "aé€😀z";
+        for (Charset charset : new Charset[] {
+            StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16BE, Charset.forName("GB18030")
+        }) {
+            CountingResponseWrapper.CountingWriter writer =
+                    new CountingResponseWrapper.CountingWriter(new StringWriter(), charset);
+            // Write char by char, so surrogate pairs are split across writes
+            for (int i = 0; i < text.length(); i++) {
+                writer.write(text.charAt(i));
+            }
+            writer.write(text, 0, text.length());
+            writer.write(text.toCharArray(), 1, 4);
+
+            String written = text + text + text.substring(1, 5);
+            assertEquals(written.getBytes(charset).length, writer.getByteCount(), charset.name());
+        }
+    }
+
+    @Test
+    void testRequestInputStream() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/items");
+        request.setContent(new byte[10_000]);
+        CountingRequestWrapper wrapper = new CountingRequestWrapper(request);
+
+        assertEquals(-1, wrapper.getByteCount());
+        byte[] buffer = new byte[1024];
+        while (wrapper.getInputStream().read(buffer) >= 0) {}
+
+        assertEquals(10_000, wrapper.getByteCount());
+    }
+
+    @Test
+    void testRequestReader() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/items");
+        request.setCharacterEncoding("UTF-8");
+        byte[] body = "Zoë\r\n😀\nend".getBytes(StandardCharsets.UTF_8);
+        request.setContent(body);
+        CountingRequestWrapper wrapper = new CountingRequestWrapper(request);
+
+        BufferedReader reader = wrapper.getReader();
+        assertEquals("Zoë", reader.readLine());
+        assertEquals("😀", reader.readLine());
+        assertEquals("end", reader.readLine());
+        assertNull(reader.readLine());
+
+        assertEquals(body.length, wrapper.getByteCount());
+    }
+
+    @Test
+    void testRelease() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/items");
+        request.setContent(new byte[100]);
+        CountingRequestWrapper requestWrapper = new CountingRequestWrapper(request);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CountingResponseWrapper responseWrapper = new CountingResponseWrapper(response);
+        requestWrapper.getInputStream().readAllBytes();
+        responseWrapper.getOutputStream().write(new byte[100]);
+
+        // Released wrappers don't keep the completed request and response alive
+        requestWrapper.release();
+        responseWrapper.release();
+        assertNotSame(request, requestWrapper.getRequest());
+        assertNotSame(response, responseWrapper.getResponse());
+        assertThrows(IllegalStateException.class, requestWrapper::getMethod);
+        assertEquals(-1, requestWrapper.getByteCount());
+        assertEquals(0, responseWrapper.getByteCount());
+
+        // And can be reused for the next ones
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest("POST", "/items");
+        nextRequest.setContent(new byte[10]);
+        requestWrapper.reset(nextRequest);
+        assertEquals(10, requestWrapper.getInputStream().readAllBytes().length);
+        assertEquals(10, requestWrapper.getByteCount());
+    }
+
+    @Test
+    void testCountingReader() throws IOException {
+        String text = "a\r\nb\rc\n\nd";
+        CountingRequestWrapper.CountingReader reader = new CountingRequestWrapper.CountingReader(
+                new BufferedReader(new StringReader(text)), StandardCharsets.ISO_8859_1);
+
+        assertEquals("a", reader.readLine());
+        assertEquals("b", reader.readLine());
+        assertEquals("c", reader.readLine());
+        assertEquals("", reader.readLine());
+        assertEquals("d", reader.readLine());
+        assertNull(reader.readLine());
+        assertEquals(text.length(), reader.getByteCount());
+    }
+}
@@ -1,13 +1,18 @@
 package io.apitally.spring.app;
 
 import io.apitally.spring.ApitallyConsumer;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Size;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -64,6 +69,39 @@ public class TestController {
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void deleteItem(@PathVariable @Min(1) Integer id) {}
 
+    @GetMapping("/async")
+    public Callable<TestItem> getItemAsync() {
+        return () -> {
+            Thread.sleep(200);
+            return new TestItem(1, "bob");
+        };
+    }
+
+    @GetMapping("/async/writer")
+    public void getTextAsync(HttpServletRequest request, HttpServletResponse response) {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.start(() -> {
+            try {
+                response.setContentType("text/plain;charset=UTF-8");
+                response.getWriter().write("hello from Zoë \ud83d");
+                response.getWriter().write("\ude00");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            asyncContext.complete();
+        });
+    }
+
+    @GetMapping("/users/{name}")
+    public TestItem getUser(@PathVariable String name) {
+        return new TestItem(1, name);
+    }
+
+    @GetMapping("/healthz")
+    public String getHealth() {
+        return "ok";
+    }
+
     @GetMapping(value = "/throw", produces = "application/json; charset=utf-8")
     public String getError() {
         throw new TestException("test");
@@ -0,0 +1,23 @@
+package io.apitally.spring.reactiveapp;
+
+import io.apitally.spring.UseApitally;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+
+@SpringBootApplication
+@UseApitally
+public class ReactiveTestApplication {
+    // Tomcat takes precedence over Netty when both are on the classpath
+    @Bean
+    @ConditionalOnProperty(name = "test.server", havingValue = "netty")
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveTestApplication.class, args);
+    }
+}
@@ -0,0 +1,67 @@
+package io.apitally.spring.reactiveapp;
+
+import io.apitally.spring.app.TestException;
+import io.apitally.spring.app.TestItem;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+public class ReactiveTestController {
+    public static final int FILE_SIZE = 10_000;
+
+    private final Path file;
+
+    public ReactiveTestController() throws IOException {
+        file = Files.createTempFile("apitally-test", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[FILE_SIZE]);
+    }
+
+    @GetMapping("/items")
+    public Flux<TestItem> getItems() {
+        return Flux.fromIterable(List.of(new TestItem(1, "bob"), new TestItem(2, "alice")));
+    }
+
+    @GetMapping("/items/{id}")
+    public Mono<TestItem> getItem(@PathVariable Integer id) {
+        return Mono.just(new TestItem(id, "bob"));
+    }
+
+    @GetMapping("/healthz")
+    public Mono<String> getHealth() {
+        return Mono.just("ok");
+    }
+
+    @GetMapping(value = "/file", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Resource getFile() {
+        return new FileSystemResource(file);
+    }
+
+    @GetMapping("/events")
+    public Flux<ServerSentEvent<String>> getEvents() {
+        return Flux.interval(Duration.ofMillis(10))
+                .map(i -> ServerSentEvent.builder("event " + i).build());
+    }
+
+    @GetMapping("/throw")
+    public Mono<String> getError() {
+        return Mono.error(new TestException("test"));
+    }
+
+    @GetMapping("/slow")
+    public Mono<String> getSlow() {
+        return Mono.delay(Duration.ofSeconds(10)).thenReturn("late");
+    }
+}
@@ -0,0 +1,24 @@
+package io.apitally.spring.reactiveapp;
+
+import io.apitally.spring.app.TestException;
+import org.springframework.boot.web.reactive.error.ErrorAttributes;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ServerWebExchange;
+
+@RestControllerAdvice
+public class ReactiveTestControllerAdvice {
+    private final ErrorAttributes errorAttributes;
+
+    public ReactiveTestControllerAdvice(ErrorAttributes errorAttributes) {
+        this.errorAttributes = errorAttributes;
+    }
+
+    @ExceptionHandler(TestException.class)
+    public ResponseEntity<String> handleTestException(TestException e, ServerWebExchange exchange) {
+        errorAttributes.storeErrorInformation(e, exchange);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Internal error");
+    }
+}